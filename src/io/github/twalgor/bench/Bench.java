@@ -0,0 +1,168 @@
+package io.github.twalgor.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal benchmark harness for the benchmarks in this package.
+ * Each benchmark is warmed up for {@code warmups} iterations,
+ * during the first of which the number of invocations per iteration
+ * is calibrated so that an iteration takes at least {@code targetMillis},
+ * and then measured for {@code iterations} iterations.
+ * The mean, the standard deviation and the minimum of the time per
+ * invocation over the measured iterations are reported.
+ * Inputs are generated from fixed seeds so that the numbers are
+ * comparable across builds run on the same machine.
+ */
+public class Bench {
+  static final int MAX_BATCH = 1 << 20;
+
+  int warmups = 5;
+  int iterations = 10;
+  int targetMillis = 100;
+  PrintStream ps = System.out;
+
+  static volatile int sink;
+
+  /**
+   * The measured time of a benchmark
+   */
+  public static class Result {
+    public final String name;
+    public final int batch;
+    public final double mean;
+    public final double sd;
+    public final double min;
+
+    Result(String name, int batch, double[] nsPerOp) {
+      this.name = name;
+      this.batch = batch;
+      double sum = 0;
+      double m = Double.MAX_VALUE;
+      for (double t: nsPerOp) {
+        sum += t;
+        m = Math.min(m, t);
+      }
+      mean = sum / nsPerOp.length;
+      double sq = 0;
+      for (double t: nsPerOp) {
+        sq += (t - mean) * (t - mean);
+      }
+      sd = nsPerOp.length > 1 ? Math.sqrt(sq / (nsPerOp.length - 1)) : 0;
+      min = m;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-40s %14.1f ns/op  +- %5.1f%%  min %14.1f  (batch %d)",
+          name, mean, mean > 0 ? 100 * sd / mean : 0, min, batch);
+    }
+  }
+
+  /**
+   * Runs the given benchmarks whose names contain one of the filters,
+   * or all of them if there is no filter
+   * @param benchmarks the benchmarks
+   * @param filters substrings of the names of the benchmarks to run
+   * @return the results
+   */
+  public List<Result> run(List<Benchmark> benchmarks, List<String> filters) {
+    List<Result> results = new ArrayList<>();
+    for (Benchmark b: benchmarks) {
+      if (!selected(b.name, filters)) {
+        continue;
+      }
+      Result r = measure(b);
+      ps.println(r);
+      results.add(r);
+    }
+    return results;
+  }
+
+  static boolean selected(String name, List<String> filters) {
+    if (filters.isEmpty()) {
+      return true;
+    }
+    for (String f: filters) {
+      if (name.contains(f)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  Result measure(Benchmark b) {
+    b.setup();
+    long target = targetMillis * 1000000L;
+    int batch = 1;
+    while (true) {
+      long t = iteration(b, batch);
+      if (t >= target || batch >= MAX_BATCH) {
+        break;
+      }
+      batch *= 2;
+    }
+    for (int i = 1; i < warmups; i++) {
+      iteration(b, batch);
+    }
+    double[] nsPerOp = new double[iterations];
+    for (int i = 0; i < iterations; i++) {
+      nsPerOp[i] = (double) iteration(b, batch) / batch;
+    }
+    return new Result(b.name, batch, nsPerOp);
+  }
+
+  /**
+   * Runs one iteration of {@code batch} invocations
+   * @return the time spent in {@code run}, in nanoseconds
+   */
+  static long iteration(Benchmark b, int batch) {
+    int h = 0;
+    long total = 0;
+    if (b.stateful) {
+      for (int j = 0; j < batch; j++) {
+        b.prepare();
+        long t0 = System.nanoTime();
+        h ^= System.identityHashCode(b.run());
+        total += System.nanoTime() - t0;
+      }
+    }
+    else {
+      b.prepare();
+      long t0 = System.nanoTime();
+      for (int j = 0; j < batch; j++) {
+        h ^= System.identityHashCode(b.run());
+      }
+      total = System.nanoTime() - t0;
+    }
+    sink ^= h;
+    return total;
+  }
+
+  /**
+   * Parses the options {@code -w warmups}, {@code -i iterations} and
+   * {@code -t targetMillis}; the other arguments are returned as filters
+   * @param args the command line arguments
+   * @return the filters
+   */
+  public List<String> parseArgs(String[] args) {
+    List<String> filters = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-w":
+        warmups = Integer.parseInt(args[++i]);
+        break;
+      case "-i":
+        iterations = Integer.parseInt(args[++i]);
+        break;
+      case "-t":
+        targetMillis = Integer.parseInt(args[++i]);
+        break;
+      default:
+        filters.add(args[i]);
+      }
+    }
+    return filters;
+  }
+}
@@ -0,0 +1,86 @@
+package io.github.twalgor.bench;
+
+import io.github.twalgor.common.Graph;
+
+/**
+ * Reproducible input graphs for the benchmarks.
+ * Besides the random graphs of {@code Graph.randomGraph} with fixed
+ * seeds, some of the classical DIMACS graphs found in the PACE
+ * instance sets are constructed, rather than read from files,
+ * so that the benchmarks do not depend on an instance directory.
+ */
+public class BenchGraphs {
+  /**
+   * The random graph named {@code gnm_n_m_seed} in the instance sets
+   * generated with {@code Graph.randomGraph(n, m, seed)}
+   */
+  public static Graph gnm(int n, int m, int seed) {
+    return Graph.randomGraph(n, m, seed);
+  }
+
+  /**
+   * The queen graph {@code queen<n>_<n>}: the squares of an n by n
+   * chess board, two adjacent if a queen moves from one to the other
+   */
+  public static Graph queen(int n) {
+    Graph g = new Graph(n * n);
+    for (int v = 0; v < n * n; v++) {
+      for (int w = v + 1; w < n * n; w++) {
+        int dr = w / n - v / n;
+        int dc = w % n - v % n;
+        if (dr == 0 || dc == 0 || dr == dc || dr == -dc) {
+          g.addEdge(v, w);
+        }
+      }
+    }
+    return g;
+  }
+
+  /**
+   * The Mycielski graph {@code myciel<k>}: {@code myciel3} has 11
+   * vertices and each step doubles the number of vertices plus one
+   */
+  public static Graph myciel(int k) {
+    Graph g = new Graph(2);
+    g.addEdge(0, 1);
+    for (int i = 1; i < k; i++) {
+      g = mycielski(g);
+    }
+    return g;
+  }
+
+  static Graph mycielski(Graph g) {
+    int n = g.n;
+    Graph h = new Graph(2 * n + 1);
+    for (int v = 0; v < n; v++) {
+      for (int w = g.neighborSet[v].nextSetBit(0); w >= 0;
+          w = g.neighborSet[v].nextSetBit(w + 1)) {
+        if (v < w) {
+          h.addEdge(v, w);
+        }
+        h.addEdge(n + v, w);
+      }
+      h.addEdge(n + v, 2 * n);
+    }
+    return h;
+  }
+
+  /**
+   * The {@code r} by {@code c} grid graph
+   */
+  public static Graph grid(int r, int c) {
+    Graph g = new Graph(r * c);
+    for (int i = 0; i < r; i++) {
+      for (int j = 0; j < c; j++) {
+        int v = i * c + j;
+        if (j + 1 < c) {
+          g.addEdge(v, v + 1);
+        }
+        if (i + 1 < r) {
+          g.addEdge(v, v + c);
+        }
+      }
+    }
+    return g;
+  }
+}
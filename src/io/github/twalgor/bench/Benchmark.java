@@ -0,0 +1,36 @@
+package io.github.twalgor.bench;
+
+/**
+ * A unit of work measured by {@code Bench}.
+ * {@code setup} is called once before any measurement,
+ * {@code prepare} before each invocation of {@code run} for a stateful
+ * benchmark and before each batch of invocations otherwise.
+ * Only the time spent in {@code run} is measured.
+ * {@code run} returns its result so that the work is not optimized away.
+ */
+public abstract class Benchmark {
+  public final String name;
+
+  /**
+   * {@code true} if {@code run} consumes the state set up by
+   * {@code prepare}, so that each invocation needs a fresh {@code prepare}
+   */
+  public final boolean stateful;
+
+  public Benchmark(String name) {
+    this(name, false);
+  }
+
+  public Benchmark(String name, boolean stateful) {
+    this.name = name;
+    this.stateful = stateful;
+  }
+
+  public void setup() {
+  }
+
+  public void prepare() {
+  }
+
+  public abstract Object run();
+}
@@ -0,0 +1,349 @@
+package io.github.twalgor.bench;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.MinimalizeTD;
+import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.VertexSet;
+import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.decomposer.SemiPID;
+import io.github.twalgor.greedy.MMAF;
+import io.github.twalgor.improver.PIDIterative;
+import io.github.twalgor.minseps.MinSepsGenerator;
+import io.github.twalgor.sieve.SubblockSieve;
+
+/**
+ * Benchmarks of the core primitives and engines.
+ * Usage: {@code java io.github.twalgor.bench.CoreBench [-w warmups]
+ * [-i iterations] [-t targetMillis] [filter ...]}, where a benchmark
+ * is run if its name contains one of the filters.
+ */
+public class CoreBench {
+  static final int N_SETS = 256;
+
+  /**
+   * An input graph together with the derived data the benchmarks
+   * on it share: its treewidth, its minimal separators of size at most
+   * the treewidth, the cliques of an MMAF triangulation, the bags of the minimalized
+   * natural order elimination and the full blocks of the minimal separators
+   */
+  static class Instance {
+    String name;
+    Graph g;
+    int tw;
+    Set<XBitSet> minSeps;
+    Set<XBitSet> mmafCliques;
+    Set<XBitSet> naiveBags;
+    ArrayList<XBitSet> components;
+    ArrayList<XBitSet> separators;
+
+    Instance(String name, Graph g) {
+      this.name = name;
+      this.g = g;
+    }
+
+    void derive() {
+      if (minSeps != null) {
+        return;
+      }
+      tw = SemiPID.decompose(g).width;
+      MinSepsGenerator msg = new MinSepsGenerator(g, tw);
+      msg.generate();
+      minSeps = msg.minSeps;
+      Graph f = g.copy();
+      MMAF mmaf = new MMAF(f);
+      mmaf.triangulate();
+      mmafCliques = new Chordal(f).maximalCliques();
+      naiveBags = naiveDecomposition(g).setOfBags();
+      components = new ArrayList<>();
+      separators = new ArrayList<>();
+      for (XBitSet sep: minSeps) {
+        for (XBitSet full: g.fullComponents(sep)) {
+          components.add(full);
+          separators.add(sep);
+        }
+      }
+    }
+  }
+
+  /**
+   * The minimalized decomposition from the elimination of the vertices
+   * in the order of their numbers, a poor starting point for the improvers
+   */
+  static TreeDecomposition naiveDecomposition(Graph g) {
+    Graph h = g.copy();
+    XBitSet remaining = XBitSet.all(g.n);
+    for (int v = 0; v < g.n; v++) {
+      XBitSet nb = h.neighborSet[v].intersectWith(remaining);
+      h.fill(nb);
+      remaining.clear(v);
+    }
+    TreeDecomposition td = Chordal.chordalToTD(h);
+    td.g = g;
+    return MinimalizeTD.minimalize(td);
+  }
+
+  static List<Instance> instances() {
+    List<Instance> list = new ArrayList<>();
+    list.add(new Instance("gnm_040_160_1", BenchGraphs.gnm(40, 160, 1)));
+    list.add(new Instance("myciel4", BenchGraphs.myciel(4)));
+    list.add(new Instance("queen5_5", BenchGraphs.queen(5)));
+    list.add(new Instance("grid_8_8", BenchGraphs.grid(8, 8)));
+    return list;
+  }
+
+  static List<Benchmark> benchmarks() {
+    List<Benchmark> list = new ArrayList<>();
+    addSetBenchmarks(list, 100);
+    addSetBenchmarks(list, 1000);
+    for (Instance inst: instances()) {
+      addGraphBenchmarks(list, inst);
+    }
+    return list;
+  }
+
+  static XBitSet[] randomSets(int n, int count, Random random) {
+    XBitSet[] sets = new XBitSet[count];
+    for (int i = 0; i < count; i++) {
+      sets[i] = new XBitSet(n);
+      for (int v = 0; v < n; v++) {
+        if (random.nextInt(4) == 0) {
+          sets[i].set(v);
+        }
+      }
+    }
+    return sets;
+  }
+
+  static void addSetBenchmarks(List<Benchmark> list, int n) {
+    XBitSet[] sets = randomSets(n, N_SETS, new Random(n));
+    VertexSet[] vsets = new VertexSet[N_SETS];
+    for (int i = 0; i < N_SETS; i++) {
+      vsets[i] = new VertexSet(n, sets[i]);
+    }
+    VertexSet into = new VertexSet(n);
+    int[] ix = new int[1];
+
+    list.add(new Benchmark("XBitSet.unionWith/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        return sets[i].unionWith(sets[(i + 1) & (N_SETS - 1)]);
+      }
+    });
+    list.add(new Benchmark("XBitSet.subtract/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        return sets[i].subtract(sets[(i + 1) & (N_SETS - 1)]);
+      }
+    });
+    list.add(new Benchmark("XBitSet.isSubset/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        return sets[i].intersectWith(sets[(i + 1) & (N_SETS - 1)]).isSubset(sets[i]);
+      }
+    });
+    list.add(new Benchmark("XBitSet.compareTo/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        return sets[i].compareTo(sets[(i + 1) & (N_SETS - 1)]);
+      }
+    });
+    list.add(new Benchmark("VertexSet.unionWith/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        return vsets[i].unionWith(vsets[(i + 1) & (N_SETS - 1)], into);
+      }
+    });
+    list.add(new Benchmark("VertexSet.isSubset/" + n) {
+      public Object run() {
+        int i = ix[0]++ & (N_SETS - 1);
+        vsets[i].intersectWith(vsets[(i + 1) & (N_SETS - 1)], into);
+        return into.isSubset(vsets[i]);
+      }
+    });
+  }
+
+  static void addGraphBenchmarks(List<Benchmark> list, Instance inst) {
+    String suffix = "/" + inst.name;
+    Graph g = inst.g;
+    int[] ix = new int[1];
+
+    list.add(new Benchmark("Graph.separatedComponents" + suffix) {
+      XBitSet[] seps;
+      public void setup() {
+        inst.derive();
+        seps = inst.minSeps.toArray(new XBitSet[inst.minSeps.size()]);
+      }
+      public Object run() {
+        return g.separatedComponents(seps[ix[0]++ % seps.length]);
+      }
+    });
+
+    list.add(new Benchmark("Graph.isPMC" + suffix) {
+      XBitSet[] candidates;
+      public void setup() {
+        inst.derive();
+        // the PMCs of an MMAF triangulation mixed with random sets
+        // of the same sizes, most of which are not PMCs
+        Random random = new Random(1);
+        ArrayList<XBitSet> list = new ArrayList<>();
+        for (XBitSet clique: inst.mmafCliques) {
+          list.add(clique);
+          XBitSet r = new XBitSet(g.n);
+          while (r.cardinality() < clique.cardinality()) {
+            r.set(random.nextInt(g.n));
+          }
+          list.add(r);
+        }
+        candidates = list.toArray(new XBitSet[list.size()]);
+      }
+      public Object run() {
+        return g.isPMC(candidates[ix[0]++ % candidates.length]);
+      }
+    });
+
+    for (String kind: new String[] {"flat", "tree", "concurrent"}) {
+      String backend = "[" + kind + "]";
+
+      list.add(new Benchmark("SubblockSieve.add" + backend + suffix, true) {
+        SubblockSieve sieve;
+        public void setup() {
+          inst.derive();
+        }
+        public void prepare() {
+          sieve = newSieve(kind, inst);
+        }
+        public Object run() {
+          fillSieve(sieve, inst);
+          return sieve;
+        }
+      });
+
+      list.add(new Benchmark("SubblockSieve.get" + backend + suffix) {
+        SubblockSieve sieve;
+        public void setup() {
+          inst.derive();
+          long used = usedHeap();
+          sieve = newSieve(kind, inst);
+          fillSieve(sieve, inst);
+          System.out.println("SubblockSieve" + backend + suffix + " " +
+              inst.components.size() + " blocks, heap " + 
+              (usedHeap() - used) + " bytes");
+        }
+        public Object run() {
+          int i = ix[0]++ % inst.components.size();
+          XBitSet scope = g.all.subtract(inst.components.get(i));
+          return sieve.get(scope, inst.separators.get(i));
+        }
+      });
+    }
+
+    list.add(new Benchmark("MinSepsGenerator.generate" + suffix, true) {
+      public void setup() {
+        inst.derive();
+      }
+      public Object run() {
+        MinSepsGenerator msg = new MinSepsGenerator(g, inst.tw);
+        msg.generate();
+        return msg.minSeps;
+      }
+    });
+
+    list.add(new Benchmark("MinSepsGenerator.generate[parallel]" + suffix, 
+        true) {
+      public void setup() {
+        inst.derive();
+      }
+      public Object run() {
+        int save = MinSepsGenerator.PARALLELISM;
+        MinSepsGenerator.PARALLELISM = 
+            Runtime.getRuntime().availableProcessors();
+        MinSepsGenerator msg = new MinSepsGenerator(g, inst.tw);
+        MinSepsGenerator.PARALLELISM = save;
+        msg.generate();
+        return msg.minSeps;
+      }
+    });
+
+    list.add(new Benchmark("SemiPID.isFeasible" + suffix, true) {
+      SemiPID spid;
+      public void setup() {
+        inst.derive();
+      }
+      public void prepare() {
+        spid = new SemiPID(g, inst.tw, new HashSet<>(inst.minSeps), false);
+      }
+      public Object run() {
+        return spid.isFeasible();
+      }
+    });
+
+    list.add(new Benchmark("MMAF.triangulate" + suffix, true) {
+      MMAF mmaf;
+      public void prepare() {
+        mmaf = new MMAF(g.copy());
+      }
+      public Object run() {
+        mmaf.triangulate();
+        return mmaf;
+      }
+    });
+
+    list.add(new Benchmark("PIDIterative.improve" + suffix, true) {
+      PIDIterative pidi;
+      public void setup() {
+        inst.derive();
+      }
+      public void prepare() {
+        pidi = new PIDIterative(g, inst.tw);
+        pidi.importPMCs(inst.naiveBags);
+      }
+      public Object run() {
+        pidi.improve(1000);
+        return pidi;
+      }
+    });
+  }
+
+  static SubblockSieve newSieve(String kind, Instance inst) {
+    if (kind.equals("concurrent")) {
+      return new SubblockSieve(inst.g, inst.tw + 1, true);
+    }
+    boolean save = SubblockSieve.FLAT;
+    SubblockSieve.FLAT = kind.equals("flat");
+    SubblockSieve sieve = new SubblockSieve(inst.g, inst.tw + 1);
+    SubblockSieve.FLAT = save;
+    return sieve;
+  }
+
+  static void fillSieve(SubblockSieve sieve, Instance inst) {
+    for (int i = 0; i < inst.components.size(); i++) {
+      sieve.add(inst.components.get(i), inst.separators.get(i));
+    }
+  }
+
+  /**
+   * The heap in use after garbage collection; the components sieved are
+   * shared by the instance, so the difference of two values
+   * is the heap taken by the sieve structure alone
+   */
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  public static void main(String[] args) {
+    Bench bench = new Bench();
+    List<String> filters = bench.parseArgs(args);
+    bench.run(benchmarks(), filters);
+  }
+}
@@ -2,7 +2,6 @@ package io.github.twalgor.btdp;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -13,7 +12,9 @@ import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.WordKeyMap;
 import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.common.XBitSetPool;
 import io.github.twalgor.decomposer.SemiPID;
 import io.github.twalgor.greedy.MMAF;
 import io.github.twalgor.log.Log;
@@ -40,6 +41,13 @@ public class BTDP {
 
   public Map<XBitSet, Block> blockMap;
   Map<XBitSet, PMC> pmcMap;
+  // interns the vertex sets of the blocks and the PMCs, once when 
+  // created, and the separators of the blocks; the maps above are keyed
+  // by the interned sets
+  XBitSetPool pool;
+  // true if the maps above are WordKeyMaps, which are looked up by the
+  // words of a set rather than by its interned instance
+  boolean wordKeys;
   Block[] ba;
   int dpMax;
 
@@ -316,8 +324,10 @@ public class BTDP {
     if (TRACE_DP) {
       System.out.println("dp ...");
     }
-    blockMap = new HashMap<>();
-    pmcMap = new HashMap<>();
+    blockMap = WordKeyMap.forGraph(g.n);
+    pmcMap = WordKeyMap.forGraph(g.n);
+    pool = new XBitSetPool();
+    wordKeys = blockMap instanceof WordKeyMap;
 
     for (XBitSet pmc: pmcs) {
       makePMC(pmc);
@@ -461,7 +471,7 @@ public class BTDP {
 
   public TreeDecomposition aDecomposition() {
     value = dp();
-    System.out.println("value " + value);
+//    System.out.println("value " + value);
     return extractTD(value);
   }
   
@@ -516,8 +526,12 @@ public class BTDP {
     // ensures that a block for a component is unique
     // thus, the equality for blocks is the identity
     assert !component.isEmpty();
+    if (!wordKeys) {
+      component = pool.intern(component);
+    }
     Block block = blockMap.get(component);
     if (block == null) {
+      component = pool.intern(component);
       block = new Block(component);
       assert g.fullComponents(block.separator).size() >= 2;
       blockMap.put(component, block);
@@ -528,8 +542,12 @@ public class BTDP {
   PMC makePMC(XBitSet separator) {
     // ensures that a bag for a vertex set is unique
     // thus, the equality for bags is the identity
+    if (!wordKeys) {
+      separator = pool.intern(separator);
+    }
     PMC pmc = pmcMap.get(separator);
     if (pmc == null) {
+      separator = pool.intern(separator);
       pmc = new PMC(separator);
       pmcMap.put(separator, pmc);
     }
@@ -581,7 +599,7 @@ public class BTDP {
 
     Block(XBitSet component) {
       this.component = component;
-      separator = g.neighborSet(component);
+      separator = pool.intern(g.neighborSet(component));
       caps = new HashSet<PMC>();
     }
 
@@ -677,8 +695,10 @@ public class BTDP {
           localPMCs.add(pmc.vertices);
         }
       }
-      blockMap = new HashMap<>();
-      pmcMap = new HashMap<>();
+      blockMap = WordKeyMap.forGraph(g.n);
+      pmcMap = WordKeyMap.forGraph(g.n);
+      pool = new XBitSetPool();
+      wordKeys = blockMap instanceof WordKeyMap;
       
       for (XBitSet bag: localPMCs) {
         makePMC(bag);
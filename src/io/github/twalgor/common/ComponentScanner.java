@@ -0,0 +1,477 @@
+package io.github.twalgor.common;
+
+import java.util.Arrays;
+
+/**
+ * Enumerates connected components of induced subgraphs of a {@code Graph},
+ * together with their neighborhoods, without allocating per call.
+ * Each thread has its own scanner, obtained by {@code get()}, holding
+ * scratch words and a result arena that grow to the largest graph
+ * scanned so far and are reused from then on.
+ *
+ * The results of a scan, accessed by the index of the component
+ * in the order of their smallest vertices, are valid only until
+ * the next scan on the same thread.  Since many methods of {@code Graph}
+ * scan, callers must read or copy out what they need before calling
+ * such methods.
+ */
+public class ComponentScanner {
+  private static final ThreadLocal<ComponentScanner> scanners =
+      ThreadLocal.withInitial(ComponentScanner::new);
+
+  /**
+   * Returns the scanner of the current thread
+   * @return the scanner
+   */
+  public static ComponentScanner get() {
+    return scanners.get();
+  }
+
+  private int n;
+  private int width;
+
+  private long[] scope;
+  private long[] rest;
+  private long[] compo;
+  private long[] nb;
+  private long[] frontier;
+  private long[] target;
+
+  /**
+   * the arena: component {@code i} occupies the words from
+   * {@code i * width} to {@code (i + 1) * width - 1} of {@code compos},
+   * and its neighborhood the same range of {@code nbs}
+   */
+  private long[] compos;
+  private long[] nbs;
+  private int count;
+
+  /**
+   * scratch for {@code isPMC}: {@code toCover[r * width ...]} holds the 
+   * members of the tested set not yet known to be adjacent to its member
+   * of rank {@code r} in the graph with every component neighborhood
+   * filled; allocated on the first test, for the size of the set
+   */
+  private long[] toCover;
+  /**
+   * scratch for {@code isPMC}: {@code ranks[i]} is the number of members
+   * of the tested set in the words before the {@code i}th
+   */
+  private int[] ranks;
+
+  private ComponentScanner() {
+    allocate(1);
+  }
+
+  private void allocate(int w) {
+    scope = new long[w];
+    rest = new long[w];
+    compo = new long[w];
+    nb = new long[w];
+    frontier = new long[w];
+    target = new long[w];
+    compos = new long[8 * w];
+    nbs = new long[8 * w];
+    ranks = new int[w];
+  }
+
+  private void prepare(Graph g) {
+    n = g.n;
+    width = VertexSet.wordsFor(n);
+    if (scope.length < width) {
+      allocate(width);
+    }
+    count = 0;
+  }
+
+  /**
+   * Returns the scratch words of the frontier of a component grown in
+   * {@code g} outside a scan, which leaves the results of the last scan
+   * intact
+   * @param g the graph
+   * @return at least {@code (g.n + 63) / 64} words
+   */
+  long[] frontier(Graph g) {
+    int w = VertexSet.wordsFor(g.n);
+    if (frontier.length < w) {
+      frontier = new long[w];
+    }
+    return frontier;
+  }
+
+  private void load(XBitSet set, long[] words) {
+    Arrays.fill(words, 0, width, 0);
+    for (int v = set.nextSetBit(0); v >= 0; v = set.nextSetBit(v + 1)) {
+      words[v >>> 6] |= 1L << v;
+    }
+  }
+
+  private void complement(long[] words) {
+    for (int i = 0; i < width; i++) {
+      words[i] = ~words[i];
+    }
+    if ((n & 63) != 0) {
+      words[width - 1] &= (1L << n) - 1;
+    }
+  }
+
+  /**
+   * Lists the components of the subgraph of {@code g} induced by
+   * {@code scope} that intersect {@code from}
+   * @param g the graph
+   * @param from the set of vertices from which the components are grown,
+   * usually a subset of {@code scope}
+   * @param scope the vertex set inducing the subgraph
+   * @return the number of components
+   */
+  public int scan(Graph g, VertexSet from, VertexSet scope) {
+    prepare(g);
+    System.arraycopy(from.words, 0, rest, 0, width);
+    System.arraycopy(scope.words, 0, this.scope, 0, width);
+    return run(g, false);
+  }
+
+  /**
+   * Same as above, with the sets given as {@code XBitSet}s
+   */
+  public int scan(Graph g, XBitSet from, XBitSet scope) {
+    prepare(g);
+    load(from, rest);
+    load(scope, this.scope);
+    return run(g, false);
+  }
+
+  /**
+   * Lists the components of {@code g} with the given separator removed
+   * @param g the graph
+   * @param separator the separator
+   * @return the number of components
+   */
+  public int scanSeparated(Graph g, XBitSet separator) {
+    prepare(g);
+    load(separator, scope);
+    complement(scope);
+    System.arraycopy(scope, 0, rest, 0, width);
+    return run(g, false);
+  }
+
+  /**
+   * Same as above, with the separator given as a {@code VertexSet}
+   */
+  public int scanSeparated(Graph g, VertexSet separator) {
+    prepare(g);
+    System.arraycopy(separator.words, 0, scope, 0, width);
+    complement(scope);
+    System.arraycopy(scope, 0, rest, 0, width);
+    return run(g, false);
+  }
+
+  /**
+   * Lists the components of {@code g} with the given separator removed
+   * that intersect {@code from}
+   * @param g the graph
+   * @param from the set of vertices from which the components are grown
+   * @param separator the separator
+   * @return the number of components
+   */
+  public int scanSeparated(Graph g, XBitSet from, XBitSet separator) {
+    prepare(g);
+    load(separator, scope);
+    complement(scope);
+    load(from, rest);
+    return run(g, false);
+  }
+
+  /**
+   * Same as above, with the sets given as {@code VertexSet}s
+   */
+  public int scanSeparated(Graph g, VertexSet from, VertexSet separator) {
+    prepare(g);
+    System.arraycopy(separator.words, 0, scope, 0, width);
+    complement(scope);
+    System.arraycopy(from.words, 0, rest, 0, width);
+    return run(g, false);
+  }
+
+  /**
+   * Scans the components of {@code g} with the given separator removed,
+   * stopping at the first full component of the separator
+   * @param g the graph
+   * @param separator the separator
+   * @return the index of the full component found; -1 if there is none
+   */
+  public int findFull(Graph g, XBitSet separator) {
+    prepare(g);
+    load(separator, scope);
+    System.arraycopy(scope, 0, target, 0, width);
+    complement(scope);
+    System.arraycopy(scope, 0, rest, 0, width);
+    run(g, true);
+    if (count > 0 && isFull(count - 1, target)) {
+      return count - 1;
+    }
+    return -1;
+  }
+
+  /**
+   * Decides if the given vertex set is a potential maximal clique of
+   * {@code g}, in a single pass over the components of {@code g}
+   * with the set removed.  Each component is used as soon as it is grown,
+   * for detecting a full component, on which the test fails immediately, 
+   * and for covering the non-adjacent pairs of members by its neighborhood. 
+   * The components are not stored; this scan leaves no results.
+   * @param g the graph
+   * @param vs the vertex set
+   * @return {@code true} if {@code vs} is a potential maximal clique 
+   */
+  public boolean isPMC(Graph g, VertexSet vs) {
+    prepare(g);
+    long[] vsWords = vs.words;
+    VertexSet[] adj = g.adjacency();
+    int size = 0;
+    for (int i = 0; i < width; i++) {
+      ranks[i] = size;
+      size += Long.bitCount(vsWords[i]);
+    }
+    if (toCover == null || toCover.length < size * width) {
+      toCover = new long[size * width];
+    }
+    int nUncovered = 0;
+    int rank = 0;
+    for (int i = 0; i < width; i++) {
+      for (long m = vsWords[i]; m != 0; m &= m - 1, rank++) {
+        int v = (i << 6) + Long.numberOfTrailingZeros(m);
+        long[] row = adj[v].words;
+        int base = rank * width;
+        for (int j = 0; j < width; j++) {
+          toCover[base + j] = vsWords[j] & ~row[j];
+        }
+        toCover[base + (v >>> 6)] &= ~(1L << v);
+        if (!isEmpty(toCover, base)) {
+          nUncovered++;
+        }
+      }
+    }
+    System.arraycopy(vsWords, 0, scope, 0, width);
+    complement(scope);
+    System.arraycopy(scope, 0, rest, 0, width);
+    for (int i = 0; i < width; i++) {
+      for (long m = rest[i]; m != 0; m = rest[i] & (m & m - 1)) {
+        int v = (i << 6) + Long.numberOfTrailingZeros(m);
+        g.growComponent(v, scope, compo, nb, frontier);
+        boolean full = true;
+        for (int j = 0; j < width; j++) {
+          if (nb[j] != vsWords[j]) {
+            full = false;
+            break;
+          }
+        }
+        if (full) {
+          return false;
+        }
+        if (nUncovered > 0) {
+          for (int j = 0; j < width; j++) {
+            for (long mu = nb[j]; mu != 0; mu &= mu - 1) {
+              // the neighborhood is a subset of vs
+              int base = (ranks[j] + 
+                  Long.bitCount(vsWords[j] & (mu & -mu) - 1)) * width;
+              if (isEmpty(toCover, base)) {
+                continue;
+              }
+              for (int l = 0; l < width; l++) {
+                toCover[base + l] &= ~nb[l];
+              }
+              if (isEmpty(toCover, base)) {
+                nUncovered--;
+              }
+            }
+          }
+        }
+        for (int j = i; j < width; j++) {
+          rest[j] &= ~compo[j];
+        }
+      }
+    }
+    return nUncovered == 0;
+  }
+
+  private boolean isEmpty(long[] words, int base) {
+    for (int j = 0; j < width; j++) {
+      if (words[base + j] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int run(Graph g, boolean stopAtFull) {
+    for (int i = 0; i < width; i++) {
+      for (long m = rest[i]; m != 0; m = rest[i] & (m & m - 1)) {
+        int v = (i << 6) + Long.numberOfTrailingZeros(m);
+        g.growComponent(v, scope, compo, nb, frontier);
+        if ((count + 1) * width > compos.length) {
+          compos = Arrays.copyOf(compos, compos.length * 2);
+          nbs = Arrays.copyOf(nbs, nbs.length * 2);
+        }
+        System.arraycopy(compo, 0, compos, count * width, width);
+        System.arraycopy(nb, 0, nbs, count * width, width);
+        count++;
+        for (int j = i; j < width; j++) {
+          rest[j] &= ~compo[j];
+        }
+        if (stopAtFull && isFull(count - 1, target)) {
+          return count;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of components found by the last scan
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns the {@code i}th component as a new {@code XBitSet}
+   * @param i the index of the component
+   * @return the component
+   */
+  public XBitSet component(int i) {
+    return toXBitSet(compos, i * width);
+  }
+
+  /**
+   * Copies the {@code i}th component into the given set
+   * @param i the index of the component
+   * @param into the destination
+   * @return the destination
+   */
+  public VertexSet component(int i, VertexSet into) {
+    System.arraycopy(compos, i * width, into.words, 0, width);
+    return into;
+  }
+
+  /**
+   * Returns the neighborhood of the {@code i}th component
+   * as a new {@code XBitSet}
+   * @param i the index of the component
+   * @return the neighborhood
+   */
+  public XBitSet neighborhood(int i) {
+    return toXBitSet(nbs, i * width);
+  }
+
+  /**
+   * Copies the neighborhood of the {@code i}th component into the given set
+   * @param i the index of the component
+   * @param into the destination
+   * @return the destination
+   */
+  public VertexSet neighborhood(int i, VertexSet into) {
+    System.arraycopy(nbs, i * width, into.words, 0, width);
+    return into;
+  }
+
+  public int componentSize(int i) {
+    return bitCount(compos, i * width);
+  }
+
+  public int neighborhoodSize(int i) {
+    return bitCount(nbs, i * width);
+  }
+
+  public boolean componentContains(int i, int v) {
+    return (compos[i * width + (v >>> 6)] & (1L << v)) != 0;
+  }
+
+  public boolean neighborhoodContains(int i, int v) {
+    return (nbs[i * width + (v >>> 6)] & (1L << v)) != 0;
+  }
+
+  /**
+   * Decides if the {@code i}th component intersects the given set
+   * @param i the index of the component
+   * @param set the set
+   * @return {@code true} if they intersect
+   */
+  public boolean componentIntersects(int i, XBitSet set) {
+    int base = i * width;
+    for (int v = set.nextSetBit(0); v >= 0 && v < n;
+        v = set.nextSetBit(v + 1)) {
+      if ((compos[base + (v >>> 6)] & (1L << v)) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decides if the {@code i}th component is a full component of
+   * the given separator, that is, its neighborhood contains the separator
+   * @param i the index of the component
+   * @param separator the separator
+   * @return {@code true} if the component is full
+   */
+  public boolean isFull(int i, XBitSet separator) {
+    int base = i * width;
+    for (int v = separator.nextSetBit(0); v >= 0;
+        v = separator.nextSetBit(v + 1)) {
+      if ((nbs[base + (v >>> 6)] & (1L << v)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean isFull(int i, VertexSet separator) {
+    return isFull(i, separator.words);
+  }
+
+  private boolean isFull(int i, long[] separator) {
+    int base = i * width;
+    for (int j = 0; j < width; j++) {
+      if ((separator[j] & ~nbs[base + j]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decides if the neighborhood of the {@code i}th component
+   * equals the given set
+   * @param i the index of the component
+   * @param set the set to compare with
+   * @return {@code true} if they are equal
+   */
+  public boolean neighborhoodEquals(int i, VertexSet set) {
+    int base = i * width;
+    for (int j = 0; j < width; j++) {
+      if (nbs[base + j] != set.words[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int bitCount(long[] words, int base) {
+    int c = 0;
+    for (int j = 0; j < width; j++) {
+      c += Long.bitCount(words[base + j]);
+    }
+    return c;
+  }
+
+  private XBitSet toXBitSet(long[] words, int base) {
+    XBitSet result = new XBitSet(n);
+    for (int j = 0; j < width; j++) {
+      for (long m = words[base + j]; m != 0; m &= m - 1) {
+        result.set((j << 6) + Long.numberOfTrailingZeros(m));
+      }
+    }
+    return result;
+  }
+}
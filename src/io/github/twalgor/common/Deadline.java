@@ -0,0 +1,96 @@
+package io.github.twalgor.common;
+
+/**
+ * A wall-clock deadline, which can also be cancelled explicitly, shared
+ * by the components of the solver working on one instance.
+ * The long running loops poll it: the searches for upper bounds, whose
+ * partial results are valid, just stop when it is expired, while the
+ * exact procedures, whose partial results would be wrong, throw
+ * {@code DeadlineExceededException} from {@code check}, to be caught
+ * where the best certificate found so far is at hand.
+ * A deadline may be polled and cancelled from any thread.
+ * A child deadline expires together with its parent but can be cancelled
+ * on its own, to stop a part of the work without stopping the rest.
+ */
+public class Deadline {
+  /**
+   * The deadline that never expires; it cannot be cancelled
+   */
+  public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+  // in terms of System.nanoTime(); Long.MAX_VALUE for no time limit
+  private final long tExpire;
+  private volatile boolean cancelled;
+  // expired whenever this is; null for a deadline that is not a child
+  private final Deadline parent;
+
+  private Deadline(long tExpire) {
+    this(tExpire, null);
+  }
+
+  private Deadline(long tExpire, Deadline parent) {
+    this.tExpire = tExpire;
+    this.parent = parent;
+  }
+
+  /**
+   * Returns the deadline the given time from now
+   * @param millis the time allowed in milliseconds; 0 or negative
+   * for no time limit
+   * @return the deadline
+   */
+  public static Deadline in(long millis) {
+    if (millis <= 0) {
+      return new Deadline(Long.MAX_VALUE);
+    }
+    return new Deadline(System.nanoTime() + millis * 1000000L);
+  }
+
+  /**
+   * Returns a new deadline expiring when this one does, which can be
+   * cancelled without affecting this one
+   * @return the child deadline
+   */
+  public Deadline newChild() {
+    return new Deadline(tExpire, this);
+  }
+
+  /**
+   * Makes this deadline expired from now on
+   */
+  public void cancel() {
+    if (this == NONE) {
+      throw new UnsupportedOperationException("NONE cannot be cancelled");
+    }
+    cancelled = true;
+  }
+
+  public boolean isExpired() {
+    return cancelled || parent != null && parent.isExpired() ||
+        tExpire != Long.MAX_VALUE && System.nanoTime() - tExpire >= 0;
+  }
+
+  /**
+   * Throws {@code DeadlineExceededException} if this deadline is expired
+   */
+  public void check() {
+    if (isExpired()) {
+      throw new DeadlineExceededException();
+    }
+  }
+
+  /**
+   * Returns the time left, 0 if expired
+   * and {@code Long.MAX_VALUE} if there is no time limit
+   * @return the time left in milliseconds
+   */
+  public long remainingMillis() {
+    if (cancelled || parent != null && parent.isExpired()) {
+      return 0;
+    }
+    if (tExpire == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, (tExpire - System.nanoTime()) / 1000000L);
+  }
+}
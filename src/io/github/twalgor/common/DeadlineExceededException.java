@@ -0,0 +1,13 @@
+package io.github.twalgor.common;
+
+/**
+ * Thrown by an exact procedure that is stopped by its {@code Deadline}
+ * before reaching its answer
+ */
+public class DeadlineExceededException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public DeadlineExceededException() {
+    super("deadline exceeded");
+  }
+}
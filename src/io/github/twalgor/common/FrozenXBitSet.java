@@ -0,0 +1,118 @@
+package io.github.twalgor.common;
+
+import java.util.BitSet;
+
+/**
+ * An immutable {@code XBitSet} created by an {@code XBitSetPool}.
+ * The hash code is computed once at creation, and two instances from 
+ * the same pool are equal only if they are identical, since the pool
+ * keeps a single instance for each set of members, so that a map keyed
+ * by the instances of a pool finds its key by identity.  Two instances
+ * with different hash codes compare unequal at once; the members are
+ * compared only for equal hash codes, which also settles the race of
+ * two threads interning the same members in a concurrent pool.
+ * Every mutator throws {@code UnsupportedOperationException}, 
+ * while {@code clone} returns an ordinary, mutable {@code XBitSet}, so that 
+ * the non-destructive operations of {@code XBitSet} work as before.
+ */
+public final class FrozenXBitSet extends XBitSet {
+  private static final long serialVersionUID = 1L;
+
+  final XBitSetPool pool;
+  private final int hash;
+
+  FrozenXBitSet(XBitSet set, XBitSetPool pool) {
+    super(set.size());
+    super.or(set);
+    this.pool = pool;
+    hash = super.hashCode();
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object x) {
+    if (x == this) {
+      return true;
+    }
+    if (x instanceof FrozenXBitSet && ((FrozenXBitSet) x).hash != hash) {
+      return false;
+    }
+    return super.equals(x);
+  }
+
+  @Override
+  public Object clone() {
+    XBitSet result = new XBitSet(size());
+    result.or(this);
+    return result;
+  }
+
+  @Override
+  public void set(int i) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void set(int i, boolean b) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void set(int from, int to) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void set(int from, int to, boolean b) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear(int i) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear(int from, int to) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void flip(int i) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void flip(int from, int to) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void and(BitSet set) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void or(BitSet set) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void xor(BitSet set) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void andNot(BitSet set) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -3,18 +3,18 @@
  */
 package io.github.twalgor.common;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
@@ -66,6 +66,48 @@ public class Graph {
    */
   public XBitSet all;
 
+  /**
+   * word-level copy of the adjacencies, built on the first use of the
+   * {@code VertexSet} based methods and kept in sync by the mutators of
+   * this class. Code that modifies {@code neighborSet} directly
+   * must do so before those methods are first used.
+   * Published as a whole through this volatile field, so that the
+   * first use may happen on several threads at once
+   */
+  private volatile Adjacency adjacency;
+
+  /**
+   * the largest number of vertices for which the component and 
+   * neighborhood primitives build the word-level adjacencies, of 
+   * {@code n * n / 64} words; larger graphs, large when sparse, are 
+   * handled through {@code neighborSet}
+   */
+  static final int MAX_WORD_ADJACENCY_N = 1 << 14;
+
+  /**
+   * The word-level adjacencies: the {@code VertexSet}s and, for graphs
+   * with at most 128 vertices, the same packed into {@code packedWidth}
+   * (1 or 2) consecutive longs per vertex, used by the specialized
+   * small graph paths; {@code packed} is {@code null} and
+   * {@code packedWidth} is 0 for larger graphs
+   */
+  private static final class Adjacency {
+    final VertexSet[] sets;
+    final long[] packed;
+    final int packedWidth;
+
+    Adjacency(VertexSet[] sets, long[] packed, int packedWidth) {
+      this.sets = sets;
+      this.packed = packed;
+      this.packedWidth = packedWidth;
+    }
+  }
+
+  /**
+   * optional cache of {@code isPMC} results, see {@code setPMCCache}
+   */
+  private Map<VertexSet, Boolean> pmcCache;
+
   /*
    * variables used in the DFS aglgorithms for
    * connected componetns and
@@ -104,6 +146,10 @@ public class Graph {
   
   public void setNeighbors(int v, XBitSet nb) {
     neighborSet[v] = nb;
+    Adjacency a = adjacency;
+    if (a != null) {
+      adjacencyCopy(a, v);
+    }
   }
 
   /**
@@ -116,6 +162,11 @@ public class Graph {
   public void addEdge(int u, int v) {
     neighborSet[u].set(v);
     neighborSet[v].set(u);
+    Adjacency a = adjacency;
+    if (a != null) {
+      adjacencySet(a, u, v);
+      adjacencySet(a, v, u);
+    }
   }
   
   /**
@@ -127,6 +178,11 @@ public class Graph {
   public void removeEdge(int u, int v) {
     neighborSet[u].clear(v);
     neighborSet[v].clear(u);
+    Adjacency a = adjacency;
+    if (a != null) {
+      adjacencyClear(a, u, v);
+      adjacencyClear(a, v, u);
+    }
   }
 
   /**
@@ -136,6 +192,74 @@ public class Graph {
    */
   private void addToNeighbors(int u, int v) {
     neighborSet[u].set(v);
+    Adjacency a = adjacency;
+    if (a != null) {
+      adjacencySet(a, u, v);
+    }
+  }
+
+  /**
+   * Returns the adjacencies of this graph as {@code VertexSet}s,
+   * building them on the first call, which may be made from any thread.
+   * The returned sets must not be modified by the caller.
+   * @return the array of adjacencies indexed by the vertex number
+   */
+  public VertexSet[] adjacency() {
+    return wordAdjacency().sets;
+  }
+
+  private Adjacency wordAdjacency() {
+    Adjacency a = adjacency;
+    if (a != null) {
+      return a;
+    }
+    synchronized (this) {
+      if (adjacency == null) {
+        adjacency = buildAdjacency();
+      }
+      return adjacency;
+    }
+  }
+
+  private Adjacency buildAdjacency() {
+    VertexSet[] adj = new VertexSet[n];
+    for (int v = 0; v < n; v++) {
+      adj[v] = new VertexSet(n, neighborSet[v]);
+    }
+    int width = VertexSet.wordsFor(n);
+    if (width > 2) {
+      return new Adjacency(adj, null, 0);
+    }
+    long[] pk = new long[n * width];
+    for (int v = 0; v < n; v++) {
+      System.arraycopy(adj[v].words, 0, pk, v * width, width);
+    }
+    return new Adjacency(adj, pk, width);
+  }
+
+  private void adjacencySet(Adjacency a, int u, int v) {
+    invalidatePMCCache();
+    a.sets[u].set(v);
+    if (a.packed != null) {
+      a.packed[u * a.packedWidth + (v >>> 6)] |= 1L << v;
+    }
+  }
+
+  private void adjacencyClear(Adjacency a, int u, int v) {
+    invalidatePMCCache();
+    a.sets[u].clear(v);
+    if (a.packed != null) {
+      a.packed[u * a.packedWidth + (v >>> 6)] &= ~(1L << v);
+    }
+  }
+
+  private void adjacencyCopy(Adjacency a, int v) {
+    invalidatePMCCache();
+    a.sets[v].copyFrom(neighborSet[v]);
+    if (a.packed != null) {
+      System.arraycopy(a.sets[v].words, 0, a.packed, v * a.packedWidth, 
+          a.packedWidth);
+    }
   }
 
   /**
@@ -277,36 +401,7 @@ public class Graph {
    */
   public static Graph readGraphDgf(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges explicitly listed
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (!line.startsWith("e")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]) - 1;
-          int v = Integer.parseInt(s[2]) - 1;
-          g.addEdge(u, v);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.readDimacs(file);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -323,39 +418,7 @@ public class Graph {
   public static Graph readGraphCol(String path, String name) {
     File file = new File(path + File.separator + name + ".col");
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        int n = Integer.parseInt(s[2]);
-        // m is twice the number of edges in this format
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line != null && !line.startsWith("e")) {
-            line = br.readLine();
-          }
-          if (line == null) {
-            break;
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[1]);
-          int v = Integer.parseInt(s[2]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.readDimacs(file);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -380,44 +443,15 @@ public class Graph {
    * return the resulting {@code Graph} object.
    * The vertex numbers 1~n in the gr file format are
    * converted to 0~n-1 in the internal representation.
+   * The file may be gzipped, or be in the binary format of 
+   * {@code GraphReader} if its name ends with ".grb".
    * @param path the path of the directory containing the file
    * @param name the file name without the extension ".gr"
    * @return the resulting {@code Graph} object; null if the reading fails
    */
   public static Graph readGraph(File file) {
     try {
-      BufferedReader br = new BufferedReader(new FileReader(file));
-      String line = br.readLine();
-      while (line.startsWith("c")) {
-        line = br.readLine();
-      }
-      if (line.startsWith("p")) {
-        String s[] = line.split(" ");
-        if (!s[1].equals("tw")) {
-          throw new RuntimeException("!!Not treewidth instance");
-        }
-        int n = Integer.parseInt(s[2]);
-        int m = Integer.parseInt(s[3]);
-        Graph g = new Graph(n);
-
-        for (int i = 0; i < m; i++) {
-          line = br.readLine();
-          while (line.startsWith("c")) {
-            line = br.readLine();
-          }
-          s = line.split(" ");
-          int u = Integer.parseInt(s[0]);
-          int v = Integer.parseInt(s[1]);
-          g.addEdge(u - 1, v - 1);
-        }
-        return g;
-      }
-      else {
-        throw new RuntimeException("!!No problem descrioption");
-      }
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
+      return GraphReader.read(file);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -491,6 +525,237 @@ public class Graph {
     return result;
   }
 
+  /**
+   * Computes the neighbor set for a given set of vertices,
+   * at the word level
+   * @param set set of vertices
+   * @param into the destination set; must be distinct from {@code set}
+   * @return the destination set, containing the neighbor set of
+   * the given vertex set
+   */
+  public VertexSet neighborSet(VertexSet set, VertexSet into) {
+    if (n > MAX_WORD_ADJACENCY_N && adjacency == null) {
+      into.clear();
+      for (int v = set.nextSetBit(0); v >= 0;
+          v = set.nextSetBit(v + 1)) {
+        XBitSet nb = neighborSet[v];
+        for (int w = nb.nextSetBit(0); w >= 0; w = nb.nextSetBit(w + 1)) {
+          into.set(w);
+        }
+      }
+      into.andNot(set);
+      return into;
+    }
+    Adjacency a = wordAdjacency();
+    VertexSet[] adj = a.sets;
+    if (a.packedWidth == 1) {
+      long[] packed = a.packed;
+      long s = set.words[0];
+      long nb = 0;
+      for (long m = s; m != 0; m &= m - 1) {
+        nb |= packed[Long.numberOfTrailingZeros(m)];
+      }
+      into.words[0] = nb & ~s;
+      return into;
+    }
+    into.clear();
+    for (int v = set.nextSetBit(0); v >= 0;
+        v = set.nextSetBit(v + 1)) {
+      into.or(adj[v]);
+    }
+    into.andNot(set);
+    return into;
+  }
+
+  /**
+   * Compute the connected component of the subgraph of this target induced by
+   * the given scope that contains the given vertex, together with
+   * the neighborhood of the component, by means of word-level operations,
+   * with the frontier in the scratch words of the thread's 
+   * {@code ComponentScanner}
+   * @param v the vertex, which must belong to {@code scope}
+   * @param scope the vertex set inducing the subgraph
+   * @param compo the destination of the component
+   * @param nb the destination of the neighborhood of the component
+   */
+  public void componentOf(int v, VertexSet scope, VertexSet compo, VertexSet nb) {
+    growComponent(v, scope, compo, nb);
+  }
+
+  /**
+   * Grows the component of the given vertex within the scope.
+   * On return {@code compo} is the component and {@code nb} its
+   * neighborhood.
+   * Each vertex of the component has its adjacency or-ed only once,
+   * when it is on the frontier.
+   */
+  private void growComponent(int v, VertexSet scope, VertexSet compo, 
+      VertexSet nb) {
+    growComponent(v, scope.words, compo.words, nb.words, 
+        ComponentScanner.get().frontier(this));
+  }
+
+  /**
+   * Same as above, on raw word arrays, of which only the first
+   * {@code (n + 63) / 64} words are used. 
+   * This is the common engine of {@code ComponentScanner} and the 
+   * {@code VertexSet} based methods.
+   */
+  void growComponent(int v, long[] scope, long[] compo, 
+      long[] nb, long[] frontier) {
+    if (n > MAX_WORD_ADJACENCY_N && adjacency == null) {
+      growSparse(v, scope, compo, nb, frontier);
+      return;
+    }
+    Adjacency a = wordAdjacency();
+    VertexSet[] adj = a.sets;
+    if (a.packedWidth == 1) {
+      compo[0] = grow1(a.packed, v, scope[0], nb);
+      return;
+    }
+    if (a.packedWidth == 2) {
+      grow2(a.packed, v, scope[0], scope[1], compo, nb);
+      return;
+    }
+    int width = VertexSet.wordsFor(n);
+    Arrays.fill(compo, 0, width, 0);
+    Arrays.fill(frontier, 0, width, 0);
+    Arrays.fill(nb, 0, width, 0);
+    compo[v >>> 6] = frontier[v >>> 6] = 1L << v;
+    while (true) {
+      for (int i = 0; i < width; i++) {
+        for (long m = frontier[i]; m != 0; m &= m - 1) {
+          long[] row = adj[(i << 6) + Long.numberOfTrailingZeros(m)].words;
+          for (int j = 0; j < width; j++) {
+            nb[j] |= row[j];
+          }
+        }
+      }
+      long any = 0;
+      for (int j = 0; j < width; j++) {
+        long f = nb[j] & scope[j] & ~compo[j];
+        frontier[j] = f;
+        compo[j] |= f;
+        any |= f;
+      }
+      if (any == 0) {
+        break;
+      }
+    }
+    for (int j = 0; j < width; j++) {
+      nb[j] &= ~compo[j];
+    }
+  }
+
+  /**
+   * Variant of {@code growComponent} for large graphs, visiting 
+   * the neighbors of each vertex of the component in {@code neighborSet}
+   * rather than or-ing its row of the word-level adjacencies.
+   * {@code frontier} holds the vertices of the component whose neighbors
+   * are yet to be visited
+   */
+  private void growSparse(int v, long[] scope, long[] compo, 
+      long[] nb, long[] frontier) {
+    int width = VertexSet.wordsFor(n);
+    Arrays.fill(compo, 0, width, 0);
+    Arrays.fill(frontier, 0, width, 0);
+    Arrays.fill(nb, 0, width, 0);
+    compo[v >>> 6] = frontier[v >>> 6] = 1L << v;
+    int i = v >>> 6;
+    while (i < width) {
+      long m = frontier[i];
+      if (m == 0) {
+        i++;
+        continue;
+      }
+      frontier[i] = m & m - 1;
+      XBitSet row = neighborSet[(i << 6) + Long.numberOfTrailingZeros(m)];
+      for (int w = row.nextSetBit(0); w >= 0; w = row.nextSetBit(w + 1)) {
+        long bit = 1L << w;
+        int j = w >>> 6;
+        if ((scope[j] & bit) == 0) {
+          nb[j] |= bit;
+        }
+        else if ((compo[j] & bit) == 0) {
+          compo[j] |= bit;
+          frontier[j] |= bit;
+          if (j < i) {
+            i = j;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Specialization of {@code growComponent} for graphs with
+   * at most 64 vertices.
+   * @return the component; its neighborhood is stored in {@code nb[0]}
+   */
+  private long grow1(long[] packed, int v, long scope, long[] nb) {
+    long compo = 1L << v;
+    long frontier = compo;
+    long reached = 0;
+    while (frontier != 0) {
+      for (long m = frontier; m != 0; m &= m - 1) {
+        reached |= packed[Long.numberOfTrailingZeros(m)];
+      }
+      frontier = reached & scope & ~compo;
+      compo |= frontier;
+    }
+    nb[0] = reached & ~compo;
+    return compo;
+  }
+
+  /**
+   * Specialization of {@code growComponent} for graphs with
+   * at most 128 vertices. The component and its neighborhood 
+   * are stored in the first two elements of {@code compo} and {@code nb}
+   */
+  private void grow2(long[] packed, int v, long scope0, long scope1, 
+      long[] compo, long[] nb) {
+    long c0 = 0;
+    long c1 = 0;
+    if (v < 64) {
+      c0 = 1L << v;
+    }
+    else {
+      c1 = 1L << v;
+    }
+    long f0 = c0;
+    long f1 = c1;
+    long r0 = 0;
+    long r1 = 0;
+    while ((f0 | f1) != 0) {
+      for (long m = f0; m != 0; m &= m - 1) {
+        int w = Long.numberOfTrailingZeros(m);
+        r0 |= packed[2 * w];
+        r1 |= packed[2 * w + 1];
+      }
+      for (long m = f1; m != 0; m &= m - 1) {
+        int w = 64 + Long.numberOfTrailingZeros(m);
+        r0 |= packed[2 * w];
+        r1 |= packed[2 * w + 1];
+      }
+      f0 = r0 & scope0 & ~c0;
+      f1 = r1 & scope1 & ~c1;
+      c0 |= f0;
+      c1 |= f1;
+    }
+    compo[0] = c0;
+    compo[1] = c1;
+    nb[0] = r0 & ~c0;
+    nb[1] = r1 & ~c1;
+  }
+
+  /**
+   * Returns the complement of the given vertex set as a {@code VertexSet}
+   */
+  private VertexSet complementOf(XBitSet set) {
+    VertexSet result = new VertexSet(n, set);
+    return result.complement(result);
+  }
+
   /**
    * Computes the closed neighbor set for a given set of vertices
    * @param set set of vertices
@@ -574,30 +839,44 @@ public class Graph {
    */
   public void listComponents(XBitSet vertices, XBitSet separator, 
       ArrayList<XBitSet> fulls, ArrayList<XBitSet> nonFulls) {
-    XBitSet rest = (XBitSet) vertices.clone();
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(this, vertices, separator);
+    for (int i = 0; i < nc; i++) {
+      if (scanner.isFull(i, separator)) {
+        fulls.add(scanner.component(i));
       }
-      if (separator.isSubset(c)) {
-        fulls.add(c.subtract(separator));
+      else {
+        nonFulls.add(scanner.component(i));
+      }
+    }    
+  }
+
+
+  /**
+   * list connected components in a given vertex set,
+   * in two list: one for the full components of the given separator
+   * and another for others. 
+   * Same as the {@code XBitSet} version, except that the vertex set 
+   * and the separator are given at the word level
+   * @param vertices set of vertices 
+   * @param separator separator
+   * @param fulls ArrayList in which to save full components
+   * @param nonFulls ArrayList in which to save non-full compnents
+   */
+  public void listComponents(VertexSet vertices, VertexSet separator, 
+      ArrayList<XBitSet> fulls, ArrayList<XBitSet> nonFulls) {
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(this, vertices, separator);
+    for (int i = 0; i < nc; i++) {
+      if (scanner.isFull(i, separator)) {
+        fulls.add(scanner.component(i));
       }
       else {
-        nonFulls.add(c.subtract(separator));
+        nonFulls.add(scanner.component(i));
       }
-      rest.andNot(c);
     }    
   }
+
   
   /**
    * Compute the connected component of this target graph after
@@ -611,19 +890,9 @@ public class Graph {
   public XBitSet separatedComponent(XBitSet separator, int v) {
     assert !separator.get(v);
 
-    XBitSet c = (XBitSet) neighborSet[v].clone();
-    XBitSet toBeScanned = c.subtract(separator);
-    c.set(v);
-    while (!toBeScanned.isEmpty()) {
-      XBitSet save = (XBitSet) c.clone();
-      for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-        c.or(neighborSet[w]);
-      }
-      toBeScanned = c.subtract(save);
-      toBeScanned.andNot(separator);
-    }
-    return c.subtract(separator);
+    VertexSet c = new VertexSet(n);
+    growComponent(v, complementOf(separator), c, new VertexSet(n));
+    return c.toXBitSet();
   }
 
   /**
@@ -690,30 +959,16 @@ public class Graph {
    * the vertex set of each component represented by a {@code XBitSet}
    */
   public ArrayList<XBitSet> componentsOf(XBitSet vs) {
-    vs = (XBitSet) vs.clone();
     ArrayList<XBitSet> result = new ArrayList<>();
-
-    for (int v = vs.nextSetBit(0); v >= 0;
-        v = vs.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.intersectWith(vs);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.and(vs);
-      }
-      result.add(c.intersectWith(vs));
-      vs.andNot(c);
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scan(this, vs, vs);
+    for (int i = 0; i < nc; i++) {
+      result.add(scanner.component(i));
     }
-
     return result;
   }
 
+
   /**
    * Compute connected components of this target graph after
    * the removal of the vertices in the given separator,
@@ -725,26 +980,14 @@ public class Graph {
    */
   public ArrayList<XBitSet> separatedComponents(XBitSet separator) {
     ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-            w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      result.add(c.subtract(separator));
-      rest.andNot(c);
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(this, separator);
+    for (int i = 0; i < nc; i++) {
+      result.add(scanner.component(i));
     }
     return result;
   }
+
   
   /**
    * Compute the components of a given set that are
@@ -757,29 +1000,17 @@ public class Graph {
   
   public ArrayList<XBitSet> fullComponentsFrom(XBitSet separator, XBitSet scope) {
     ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = (XBitSet) scope.clone();
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        result.add(c.subtract(separator));
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(this, scope, separator);
+    for (int i = 0; i < nc; i++) {
+      if (scanner.isFull(i, separator)) {
+        result.add(scanner.component(i));
       }
-      rest.andNot(c);
     }
     return result;
   }
 
+
   
   /**
    * Compute the full components associated with the given separator,
@@ -790,28 +1021,16 @@ public class Graph {
    */
   public ArrayList<XBitSet> fullComponents(XBitSet separator) {
     ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        result.add(c.subtract(separator));
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(this, separator);
+    for (int i = 0; i < nc; i++) {
+      if (scanner.isFull(i, separator)) {
+        result.add(scanner.component(i));
       }
-      rest.andNot(c);
     }
     return result;
   }
+
   
   /**
    * Find a full component associated with the given separator
@@ -820,29 +1039,15 @@ public class Graph {
    * {@code null} if none is found 
    */
   public XBitSet aFullComponent(XBitSet separator) {
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        return c.subtract(separator);
-      }
-      rest.andNot(c);
+    ComponentScanner scanner = ComponentScanner.get();
+    int i = scanner.findFull(this, separator);
+    if (i < 0) {
+      return null;
     }
-    return null;
+    return scanner.component(i);
   }
 
+
   /**
    * Decides if the given vertex set is a minimal separator of
    * this target graph
@@ -863,30 +1068,66 @@ public class Graph {
    * {@code false} otherwise
    *    */
   public boolean isPMC(XBitSet vs) {
-    int[] va = vs.toArray();
-    XBitSet[] toCover = new XBitSet[va.length];
-    for (int i = 0; i < va.length; i++) {
-      toCover[i] = vs.subtract(neighborSet[va[i]]);
-      toCover[i].clear(va[i]);
-    }
-    ArrayList<XBitSet> components = separatedComponents(vs);
-    for (XBitSet compo: components) {
-      XBitSet sep = neighborSet(compo);
-      if (sep.equals(vs)) {
-        return false;
-      }
-      for (int i = 0; i < va.length; i++) {
-        if (sep.get(va[i])) {
-          toCover[i].andNot(sep);
+    return isPMC(new VertexSet(n, vs));
+  }
+
+  /**
+   * Decides if the given vertex set is a potential maixmal clique of
+   * this target graph, at the word level
+   * @param vs the vertex set
+   * @return {@cod true} if the vertex set is a potential maximal clique
+   * {@code false} otherwise
+   *    */
+  public boolean isPMC(VertexSet vs) {
+    if (pmcCache != null) {
+      synchronized (pmcCache) {
+        Boolean cached = pmcCache.get(vs);
+        if (cached != null) {
+          return cached;
         }
       }
     }
-    for (int i = 0; i < va.length; i++) {
-      if (!toCover[i].isEmpty()) {
-        return false;
+    boolean result = ComponentScanner.get().isPMC(this, vs);
+    if (pmcCache != null) {
+      synchronized (pmcCache) {
+        pmcCache.put(new VertexSet(n).copyFrom(vs), result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Enables a cache of the results of {@code isPMC}, holding the most
+   * recently used {@code capacity} vertex sets with both positive and 
+   * negative results.  The cache is emptied whenever the edges change.
+   * Intended for solvers which test the same candidate sets repeatedly.
+   * @param capacity the maximum number of cached vertex sets;
+   * 0 to disable the cache
+   */
+  public void setPMCCache(int capacity) {
+    if (capacity <= 0) {
+      pmcCache = null;
+      return;
+    }
+    pmcCache = new LinkedHashMap<VertexSet, Boolean>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<VertexSet, Boolean> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  private void invalidatePMCCache() {
+    Map<VertexSet, Boolean> cache = pmcCache;
+    if (cache != null) {
+      synchronized (cache) {
+        if (!cache.isEmpty()) {
+          cache.clear();
+        }
       }
     }
-    return true;
   }
   
   /**
@@ -919,29 +1160,9 @@ public class Graph {
    * {@code false} otherwise
    *    */
   public boolean isFullComponentFree(XBitSet separator) {
-    ArrayList<XBitSet> result = new ArrayList<XBitSet>();
-    XBitSet rest = all.subtract(separator);
-    for (int v = rest.nextSetBit(0); v >= 0;
-        v = rest.nextSetBit(v + 1)) {
-      XBitSet c = (XBitSet) neighborSet[v].clone();
-      XBitSet toBeScanned = c.subtract(separator);
-      c.set(v);
-      while (!toBeScanned.isEmpty()) {
-        XBitSet save = (XBitSet) c.clone();
-        for (int w = toBeScanned.nextSetBit(0); w >= 0;
-          w = toBeScanned.nextSetBit(w + 1)) {
-          c.or(neighborSet[w]);
-        }
-        toBeScanned = c.subtract(save);
-        toBeScanned.andNot(separator);
-      }
-      if (separator.isSubset(c)) {
-        return true;
-      }
-      rest.andNot(c);
-    }
-    return false;
+    return ComponentScanner.get().findFull(this, separator) >= 0;
   }
+
   
   /**
    *  Decides if a connected vertex set {@code component} is a full component
@@ -986,19 +1207,10 @@ public class Graph {
       return true;
     }
 
-    XBitSet c = (XBitSet) neighborSet[v].clone();
-    XBitSet toScan = c.intersectWith(vertices);
-    c.set(v);
-    while (!toScan.isEmpty()) {
-      XBitSet save = (XBitSet) c.clone();
-      for (int w = toScan.nextSetBit(0); w >= 0;
-        w = toScan.nextSetBit(w + 1)) {
-        c.or(neighborSet[w]);
-      }
-      toScan = c.subtract(save);
-      toScan.and(vertices);
-    }
-    return vertices.isSubset(c);
+    VertexSet scope = new VertexSet(n, vertices);
+    VertexSet c = new VertexSet(n);
+    growComponent(v, scope, c, new VertexSet(n));
+    return c.equals(scope);
   }
 
   /**
@@ -1324,6 +1536,10 @@ public class Graph {
     for (int v = vertexSet.nextSetBit(0); v >= 0;
         v = vertexSet.nextSetBit(v + 1)) {
       neighborSet[v].andNot(vertexSet);
+      Adjacency a = adjacency;
+      if (a != null) {
+        adjacencyCopy(a, v);
+      }
     }
   }
 
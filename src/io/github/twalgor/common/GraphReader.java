@@ -0,0 +1,351 @@
+package io.github.twalgor.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class reads graphs in the {@code gr} format of PACE and in the
+ * {@code dgf} and {@code col} formats of DIMACS, parsing the bytes of
+ * a memory mapped file directly, without decoding lines into strings.
+ * Tokens may be separated by any number of spaces and tabs, and
+ * lines may end with CRLF.  Input compressed by gzip is recognized
+ * by its magic number and decompressed transparently.
+ * Self loops are ignored.
+ *
+ * Graphs can also be stored in and loaded from a compact binary format:
+ * a header of the magic number, {@code n} and the number of edges
+ * {@code m}, followed by the offsets of the adjacency lists of
+ * the vertices, listing for each vertex its neighbors larger than itself,
+ * and then the lists, all as big-endian {@code int} values.
+ * Such a file is loaded with a single bulk read.
+ */
+public class GraphReader {
+  static final int BINARY_MAGIC = 0x54574731; // "TWG1"
+  public static final String BINARY_EXTENSION = ".grb";
+
+  ByteBuffer buf;
+  int pos;
+  int limit;
+
+  GraphReader(ByteBuffer buf) {
+    this.buf = buf;
+    pos = buf.position();
+    limit = buf.limit();
+  }
+
+  /**
+   * Reads a graph from the given file, choosing the format by the
+   * extension, which may be followed by {@code .gz}:
+   * {@code .dgf}, {@code .col}, {@code .grb} for the binary format and
+   * {@code gr} otherwise
+   * @param file the file to read
+   * @return the graph read
+   * @throws IOException if reading fails
+   */
+  public static Graph read(File file) throws IOException {
+    String name = file.getName();
+    if (name.endsWith(".gz")) {
+      name = name.substring(0, name.length() - 3);
+    }
+    if (name.endsWith(BINARY_EXTENSION)) {
+      return readBinary(file);
+    }
+    if (name.endsWith(".dgf") || name.endsWith(".col")) {
+      return readDimacs(file);
+    }
+    return readGr(file);
+  }
+
+  /**
+   * Reads a graph in the {@code gr} format, possibly gzipped
+   * @param file the file to read
+   * @return the graph read
+   * @throws IOException if reading fails
+   */
+  public static Graph readGr(File file) throws IOException {
+    return new GraphReader(load(file)).parseGr();
+  }
+
+  /**
+   * Reads a graph in the {@code dgf} or {@code col} format, possibly gzipped
+   * @param file the file to read
+   * @return the graph read
+   * @throws IOException if reading fails
+   */
+  public static Graph readDimacs(File file) throws IOException {
+    return new GraphReader(load(file)).parseDimacs();
+  }
+
+  /**
+   * Reads a graph from the given file, through the binary cache file:
+   * if the cache file is not older than the given file, the graph
+   * is loaded from the cache; otherwise the graph is read from the
+   * given file and stored in the cache file
+   * @param file the file to read
+   * @param cacheFile the cache file
+   * @return the graph read
+   * @throws IOException if reading fails
+   */
+  public static Graph readCached(File file, File cacheFile) throws IOException {
+    if (cacheFile.exists() &&
+        cacheFile.lastModified() >= file.lastModified()) {
+      return readBinary(cacheFile);
+    }
+    Graph g = read(file);
+    writeBinary(g, cacheFile);
+    return g;
+  }
+
+  /**
+   * Returns the content of the file: the file mapped into memory
+   * or, if it is gzipped, its decompressed content
+   */
+  static ByteBuffer load(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("file too large: " + file);
+      }
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (size >= 2 && (mapped.get(0) & 0xff) == 0x1f &&
+          (mapped.get(1) & 0xff) == 0x8b) {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+          return ByteBuffer.wrap(readAll(in));
+        }
+      }
+      return mapped;
+    }
+  }
+
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+    byte[] chunk = new byte[1 << 16];
+    int len;
+    while ((len = in.read(chunk)) > 0) {
+      out.write(chunk, 0, len);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Parses the {@code gr} format: a problem line {@code p tw n m}
+   * followed by edge lines {@code u v} and comment lines starting
+   * with {@code c}
+   */
+  Graph parseGr() {
+    Graph g = null;
+    while (pos < limit) {
+      skipBlanks();
+      if (pos == limit) {
+        break;
+      }
+      byte c = buf.get(pos);
+      if (c == '\n') {
+        pos++;
+      }
+      else if (c == 'p') {
+        pos++;
+        if (!"tw".equals(readWord())) {
+          throw new RuntimeException("!!Not treewidth instance");
+        }
+        g = new Graph(readInt());
+        skipLine();
+      }
+      else if (isDigit(c)) {
+        if (g == null) {
+          throw new RuntimeException("!!No problem descrioption");
+        }
+        addEdge(g, readInt(), readInt());
+        skipLine();
+      }
+      else {
+        skipLine();
+      }
+    }
+    if (g == null) {
+      throw new RuntimeException("!!No problem descrioption");
+    }
+    return g;
+  }
+
+  /**
+   * Parses the {@code dgf} and {@code col} formats: a problem line
+   * {@code p edge n m} followed by edge lines {@code e u v};
+   * lines of other types are skipped
+   */
+  Graph parseDimacs() {
+    Graph g = null;
+    while (pos < limit) {
+      skipBlanks();
+      if (pos == limit) {
+        break;
+      }
+      byte c = buf.get(pos);
+      if (c == '\n') {
+        pos++;
+      }
+      else if (c == 'p') {
+        pos++;
+        readWord();
+        g = new Graph(readInt());
+        skipLine();
+      }
+      else if (c == 'e') {
+        if (g == null) {
+          throw new RuntimeException("!!No problem descrioption");
+        }
+        pos++;
+        addEdge(g, readInt(), readInt());
+        skipLine();
+      }
+      else {
+        skipLine();
+      }
+    }
+    if (g == null) {
+      throw new RuntimeException("!!No problem descrioption");
+    }
+    return g;
+  }
+
+  static void addEdge(Graph g, int u, int v) {
+    if (u < 1 || u > g.n || v < 1 || v > g.n) {
+      throw new RuntimeException("!!Vertex out of range: " + u + " " + v);
+    }
+    if (u != v) {
+      g.addEdge(u - 1, v - 1);
+    }
+  }
+
+  static boolean isDigit(byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  static boolean isBlank(byte c) {
+    return c == ' ' || c == '\t' || c == '\r';
+  }
+
+  void skipBlanks() {
+    while (pos < limit && isBlank(buf.get(pos))) {
+      pos++;
+    }
+  }
+
+  void skipLine() {
+    while (pos < limit && buf.get(pos++) != '\n') {
+    }
+  }
+
+  String readWord() {
+    skipBlanks();
+    int start = pos;
+    while (pos < limit) {
+      byte c = buf.get(pos);
+      if (isBlank(c) || c == '\n') {
+        break;
+      }
+      pos++;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = start; i < pos; i++) {
+      sb.append((char) buf.get(i));
+    }
+    return sb.toString();
+  }
+
+  int readInt() {
+    skipBlanks();
+    if (pos == limit || !isDigit(buf.get(pos))) {
+      throw new RuntimeException("!!Number expected at byte " + pos);
+    }
+    int x = 0;
+    while (pos < limit) {
+      byte c = buf.get(pos);
+      if (!isDigit(c)) {
+        break;
+      }
+      x = x * 10 + (c - '0');
+      pos++;
+    }
+    return x;
+  }
+
+  /**
+   * Writes the graph in the binary format
+   * @param g the graph
+   * @param file the file to write
+   * @throws IOException if writing fails
+   */
+  public static void writeBinary(Graph g, File file) throws IOException {
+    int m = 0;
+    for (int v = 0; v < g.n; v++) {
+      m += g.neighborSet[v].cardinality();
+    }
+    m /= 2;
+    ByteBuffer out = ByteBuffer.allocate(4 * (3 + g.n + 1 + m));
+    out.order(ByteOrder.BIG_ENDIAN);
+    out.putInt(BINARY_MAGIC);
+    out.putInt(g.n);
+    out.putInt(m);
+    int offset = 0;
+    for (int v = 0; v < g.n; v++) {
+      out.putInt(offset);
+      offset += g.neighborSet[v].get(v + 1, g.n).cardinality();
+    }
+    out.putInt(offset);
+    for (int v = 0; v < g.n; v++) {
+      XBitSet nb = g.neighborSet[v];
+      for (int w = nb.nextSetBit(v + 1); w >= 0; w = nb.nextSetBit(w + 1)) {
+        out.putInt(w);
+      }
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream fos = new FileOutputStream(tmp)) {
+      fos.write(out.array());
+    }
+    if (!tmp.renameTo(file)) {
+      file.delete();
+      if (!tmp.renameTo(file)) {
+        throw new IOException("cannot rename " + tmp + " to " + file);
+      }
+    }
+  }
+
+  /**
+   * Reads a graph in the binary format
+   * @param file the file to read
+   * @return the graph read
+   * @throws IOException if reading fails or the file is not in the format
+   */
+  public static Graph readBinary(File file) throws IOException {
+    IntBuffer ib = load(file).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+    if (ib.remaining() < 3 || ib.get(0) != BINARY_MAGIC) {
+      throw new IOException("not a binary graph file: " + file);
+    }
+    int n = ib.get(1);
+    int m = ib.get(2);
+    int base = 3 + n + 1;
+    if (ib.remaining() != base + m || ib.get(3 + n) != m) {
+      throw new IOException("corrupt binary graph file: " + file);
+    }
+    Graph g = new Graph(n);
+    for (int v = 0; v < n; v++) {
+      int end = ib.get(3 + v + 1);
+      for (int i = ib.get(3 + v); i < end; i++) {
+        g.addEdge(v, ib.get(base + i));
+      }
+    }
+    return g;
+  }
+}
@@ -0,0 +1,367 @@
+package io.github.twalgor.common;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a set of vertices of a graph with a fixed
+ * number {@code n} of vertices, as a plain {@code long} array
+ * of {@code (n + 63) / 64} words.
+ * Unlike {@code XBitSet}, the width never changes after construction,
+ * predicates such as {@code isSubset} do not allocate, and set operations
+ * are either done in place or into a destination set supplied by the caller.
+ * The intended use is for scratch sets in the inner loops of the solvers,
+ * where {@code XBitSet} temporaries dominate the allocation.
+ * Sets combined by an operation must have the same width.
+ */
+public class VertexSet {
+  /**
+   * the number of vertices this set can contain
+   */
+  public final int n;
+
+  /**
+   * the bit vector: vertex {@code v} is in the set if and only if
+   * bit {@code v % 64} of {@code words[v / 64]} is set
+   */
+  final long[] words;
+
+  /**
+   * Creates an empty {@code VertexSet} for vertices smaller than {@code n}
+   * @param n the number of vertices
+   */
+  public VertexSet(int n) {
+    this.n = n;
+    words = new long[wordsFor(n)];
+  }
+
+  /**
+   * Creates a {@code VertexSet} for vertices smaller than {@code n}
+   * with the members of the given {@code XBitSet}
+   * @param n the number of vertices
+   * @param set the members
+   */
+  public VertexSet(int n, XBitSet set) {
+    this(n);
+    copyFrom(set);
+  }
+
+  /**
+   * Returns the number of words needed for {@code n} vertices
+   * @param n the number of vertices
+   * @return the number of {@code long} words
+   */
+  public static int wordsFor(int n) {
+    return (n + 63) >>> 6;
+  }
+
+  /**
+   * Returns the {@code i}th word of the bit vector, holding the
+   * vertices from {@code 64 * i} to {@code 64 * i + 63}
+   * @param i the index of the word
+   * @return the word
+   */
+  public long word(int i) {
+    return words[i];
+  }
+
+  /**
+   * Returns the {@code i}th word of the bit vector of the given set,
+   * without allocating
+   * @param set the set
+   * @param i the index of the word
+   * @return the word
+   */
+  public static long word(XBitSet set, int i) {
+    long w = 0;
+    int end = (i + 1) << 6;
+    // one step for each run of consecutive members
+    for (int v = set.nextSetBit(i << 6); v >= 0 && v < end;
+        v = set.nextSetBit(v)) {
+      int u = Math.min(set.nextClearBit(v), end);
+      w |= (-1L << v) & (-1L >>> (end - u));
+      v = u;
+    }
+    return w;
+  }
+
+  public boolean get(int v) {
+    return (words[v >>> 6] & (1L << v)) != 0;
+  }
+
+  public void set(int v) {
+    words[v >>> 6] |= 1L << v;
+  }
+
+  public void clear(int v) {
+    words[v >>> 6] &= ~(1L << v);
+  }
+
+  /**
+   * Makes this set empty
+   */
+  public void clear() {
+    Arrays.fill(words, 0);
+  }
+
+  public boolean isEmpty() {
+    for (int i = 0; i < words.length; i++) {
+      if (words[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int cardinality() {
+    int c = 0;
+    for (int i = 0; i < words.length; i++) {
+      c += Long.bitCount(words[i]);
+    }
+    return c;
+  }
+
+  /**
+   * Returns the smallest member that is greater than or equal to {@code from}
+   * @param from the vertex to start the search from
+   * @return the member found; -1 if there is none
+   */
+  public int nextSetBit(int from) {
+    int i = from >>> 6;
+    if (i >= words.length) {
+      return -1;
+    }
+    long w = words[i] & (-1L << from);
+    while (true) {
+      if (w != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words.length) {
+        return -1;
+      }
+      w = words[i];
+    }
+  }
+
+  public boolean isSubset(VertexSet set) {
+    for (int i = 0; i < words.length; i++) {
+      if ((words[i] & ~set.words[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean isSuperset(VertexSet set) {
+    return set.isSubset(this);
+  }
+
+  public boolean intersects(VertexSet set) {
+    for (int i = 0; i < words.length; i++) {
+      if ((words[i] & set.words[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean isDisjoint(VertexSet set) {
+    return !intersects(set);
+  }
+
+  /**
+   * Returns the number of common members with the given set,
+   * without constructing the intersection
+   * @param set the set to intersect with
+   * @return the cardinality of the intersection
+   */
+  public int intersectionCardinality(VertexSet set) {
+    int c = 0;
+    for (int i = 0; i < words.length; i++) {
+      c += Long.bitCount(words[i] & set.words[i]);
+    }
+    return c;
+  }
+
+  /**
+   * Decides if this set is a subset of the given {@code XBitSet},
+   * without converting the argument.
+   * @param set an {@code XBitSet}
+   * @return {@code true} if this set is a subset of {@code set}
+   */
+  public boolean isSubset(XBitSet set) {
+    for (int v = nextSetBit(0); v >= 0; v = nextSetBit(v + 1)) {
+      if (!set.get(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decides if this set is a superset of the given {@code XBitSet},
+   * without converting the argument.
+   * @param set an {@code XBitSet}
+   * @return {@code true} if this set is a superset of {@code set}
+   */
+  public boolean isSuperset(XBitSet set) {
+    for (int v = set.nextSetBit(0); v >= 0; v = set.nextSetBit(v + 1)) {
+      if (v >= n || !get(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decides if this set equals the given {@code XBitSet},
+   * without converting the argument.
+   * @param set an {@code XBitSet}
+   * @return {@code true} if the two sets have the same members
+   */
+  public boolean equalsTo(XBitSet set) {
+    return isSubset(set) && cardinality() == set.cardinality();
+  }
+
+  /**
+   * Replaces the content of this set by that of the given set
+   * @param set the set to copy from
+   * @return this set
+   */
+  public VertexSet copyFrom(VertexSet set) {
+    System.arraycopy(set.words, 0, words, 0, words.length);
+    return this;
+  }
+
+  /**
+   * Replaces the content of this set by that of the given {@code XBitSet}
+   * @param set the set to copy from; must not have a member
+   * greater than or equal to {@code n}
+   * @return this set
+   */
+  public VertexSet copyFrom(XBitSet set) {
+    Arrays.fill(words, 0);
+    for (int v = set.nextSetBit(0); v >= 0; v = set.nextSetBit(v + 1)) {
+      words[v >>> 6] |= 1L << v;
+    }
+    return this;
+  }
+
+  public void or(VertexSet set) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] |= set.words[i];
+    }
+  }
+
+  public void and(VertexSet set) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= set.words[i];
+    }
+  }
+
+  public void andNot(VertexSet set) {
+    for (int i = 0; i < words.length; i++) {
+      words[i] &= ~set.words[i];
+    }
+  }
+
+  /**
+   * Stores the union of this set and the argument set into
+   * the destination set
+   * @param set the argument set
+   * @param into the destination, which may be this or the argument set
+   * @return the destination set
+   */
+  public VertexSet unionWith(VertexSet set, VertexSet into) {
+    for (int i = 0; i < words.length; i++) {
+      into.words[i] = words[i] | set.words[i];
+    }
+    return into;
+  }
+
+  /**
+   * Stores the intersection of this set and the argument set into
+   * the destination set
+   * @param set the argument set
+   * @param into the destination, which may be this or the argument set
+   * @return the destination set
+   */
+  public VertexSet intersectWith(VertexSet set, VertexSet into) {
+    for (int i = 0; i < words.length; i++) {
+      into.words[i] = words[i] & set.words[i];
+    }
+    return into;
+  }
+
+  /**
+   * Stores this set minus the argument set into the destination set
+   * @param set the argument set
+   * @param into the destination, which may be this or the argument set
+   * @return the destination set
+   */
+  public VertexSet subtract(VertexSet set, VertexSet into) {
+    for (int i = 0; i < words.length; i++) {
+      into.words[i] = words[i] & ~set.words[i];
+    }
+    return into;
+  }
+
+  /**
+   * Stores the complement of this set, with respect to the
+   * vertices smaller than {@code n}, into the destination set
+   * @param into the destination, which may be this set
+   * @return the destination set
+   */
+  public VertexSet complement(VertexSet into) {
+    for (int i = 0; i < words.length; i++) {
+      into.words[i] = ~words[i];
+    }
+    if ((n & 63) != 0) {
+      into.words[words.length - 1] &= (1L << n) - 1;
+    }
+    return into;
+  }
+
+  /**
+   * Converts this set into a new {@code XBitSet}
+   * @return the {@code XBitSet} with the same members
+   */
+  public XBitSet toXBitSet() {
+    XBitSet result = new XBitSet(n);
+    for (int v = nextSetBit(0); v >= 0; v = nextSetBit(v + 1)) {
+      result.set(v);
+    }
+    return result;
+  }
+
+  /**
+   * Writes this set into the given byte array in the little-endian
+   * byte order used by {@code BitSet.toByteArray},
+   * without trimming the trailing zero bytes.
+   * @param bytes the array to write into; bytes beyond the width of this
+   * set are cleared
+   */
+  public void toBytes(byte[] bytes) {
+    for (int j = 0; j < bytes.length; j++) {
+      int i = j >>> 3;
+      bytes[j] = i < words.length ? (byte) (words[i] >>> ((j & 7) << 3)) : 0;
+    }
+  }
+
+  @Override
+  public boolean equals(Object x) {
+    if (!(x instanceof VertexSet)) {
+      return false;
+    }
+    return Arrays.equals(words, ((VertexSet) x).words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  @Override
+  public String toString() {
+    return toXBitSet().toString();
+  }
+}
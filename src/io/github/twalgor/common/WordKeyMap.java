@@ -0,0 +1,191 @@
+package io.github.twalgor.common;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map keyed by the vertex sets of a graph with at most {@code MAX_N}
+ * vertices, which packs each key into two {@code long}s held in primitive
+ * arrays with open addressing, so that a lookup hashes and compares
+ * two words rather than the {@code XBitSet}s.
+ * The solvers keep their blocks and PMCs in such maps for small graphs,
+ * as selected by {@code forGraph}.
+ * The entries are removed only by {@code clear}, and the values must not
+ * be {@code null}.
+ * Not safe for concurrent use.
+ * @param <V> the type of the values
+ */
+public class WordKeyMap<V> extends AbstractMap<XBitSet, V> {
+  /**
+   * the largest number of vertices of the graphs whose sets are keys
+   */
+  public static final int MAX_N = 128;
+  static final int INITIAL_CAPACITY = 16;
+
+  // slot i holds the key of words keys0[i] and keys1[i], given as
+  // keySets[i], if values[i] is not null
+  long[] keys0;
+  long[] keys1;
+  XBitSet[] keySets;
+  Object[] values;
+  int size;
+
+  /**
+   * Creates a map for the vertex sets of a graph with the given number
+   * of vertices: a {@code WordKeyMap} if the sets fit in two words;
+   * a {@code HashMap} otherwise
+   * @param <V> the type of the values
+   * @param n the number of vertices
+   * @return the map
+   */
+  public static <V> Map<XBitSet, V> forGraph(int n) {
+    if (n <= MAX_N) {
+      return new WordKeyMap<>();
+    }
+    return new HashMap<>();
+  }
+
+  public WordKeyMap() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    keys0 = new long[capacity];
+    keys1 = new long[capacity];
+    keySets = new XBitSet[capacity];
+    values = new Object[capacity];
+  }
+
+  private static int hash(long w0, long w1) {
+    long h = w0 * 0x9e3779b97f4a7c15L + w1 * 0xc2b2ae3d27d4eb4fL;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Returns the slot holding the key of the given words, or the empty
+   * slot where it would be placed
+   */
+  private int find(long w0, long w1) {
+    int mask = values.length - 1;
+    int i = hash(w0, w1) & mask;
+    while (values[i] != null && (keys0[i] != w0 || keys1[i] != w1)) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(Object key) {
+    if (!(key instanceof XBitSet)) {
+      return null;
+    }
+    XBitSet set = (XBitSet) key;
+    assert set.length() <= MAX_N;
+    return (V) values[find(VertexSet.word(set, 0), VertexSet.word(set, 1))];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V put(XBitSet key, V value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    assert key.length() <= MAX_N;
+    long w0 = VertexSet.word(key, 0);
+    long w1 = VertexSet.word(key, 1);
+    int i = find(w0, w1);
+    V old = (V) values[i];
+    values[i] = value;
+    if (old == null) {
+      keys0[i] = w0;
+      keys1[i] = w1;
+      keySets[i] = key;
+      if (++size * 4 > values.length * 3) {
+        rehash();
+      }
+    }
+    return old;
+  }
+
+  private void rehash() {
+    long[] k0 = keys0;
+    long[] k1 = keys1;
+    XBitSet[] ks = keySets;
+    Object[] vs = values;
+    allocate(vs.length * 2);
+    for (int j = 0; j < vs.length; j++) {
+      if (vs[j] != null) {
+        int i = find(k0[j], k1[j]);
+        keys0[i] = k0[j];
+        keys1[i] = k1[j];
+        keySets[i] = ks[j];
+        values[i] = vs[j];
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(keySets, null);
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  @Override
+  public Set<Map.Entry<XBitSet, V>> entrySet() {
+    return new AbstractSet<Map.Entry<XBitSet, V>>() {
+      @Override
+      public Iterator<Map.Entry<XBitSet, V>> iterator() {
+        return new Iterator<Map.Entry<XBitSet, V>>() {
+          int i = advance(0);
+
+          int advance(int j) {
+            while (j < values.length && values[j] == null) {
+              j++;
+            }
+            return j;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return i < values.length;
+          }
+
+          @SuppressWarnings("unchecked")
+          @Override
+          public Map.Entry<XBitSet, V> next() {
+            if (i >= values.length) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<XBitSet, V> e =
+                new SimpleImmutableEntry<>(keySets[i], (V) values[i]);
+            i = advance(i + 1);
+            return e;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+}
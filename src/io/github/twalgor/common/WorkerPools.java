@@ -0,0 +1,52 @@
+package io.github.twalgor.common;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The thread pools of the parallel parts of the solvers, one for each
+ * kind of work and number of threads.
+ * Each kind has pools of its own, so that a task never waits for work
+ * of another kind queued behind it, as when the speculative exploration
+ * of {@code ContractionRecursive} runs a parallel {@code PIDIterative}.
+ * A pool, once created, is kept rather than replaced by a pool with
+ * a different number of threads, so that solvers with different
+ * parallelism running at the same time share their pools safely.
+ * The workers of a pool left idle terminate after a while, as usual
+ * for {@code ForkJoinPool}, so that a pool no longer used holds
+ * no threads.
+ */
+public class WorkerPools {
+  /**
+   * The kinds of work run on the pools
+   */
+  public enum Kind {
+    // the searches from the blocks of PIDIterative
+    SEARCH,
+    // the layers of the DP of SemiPID
+    DP,
+    // the separators generated by MinSepsGenerator
+    GENERATION,
+    // the children explored speculatively by ContractionRecursive
+    SPECULATION,
+    // the engines of Portfolio
+    PORTFOLIO
+  }
+
+  static final Map<Kind, Map<Integer, ForkJoinPool>> pools =
+      new EnumMap<>(Kind.class);
+
+  /**
+   * Returns the pool for the kind of work with the given number of
+   * threads, creating it on the first request
+   * @param kind the kind of work
+   * @param parallelism the number of threads
+   * @return the pool
+   */
+  public static synchronized ForkJoinPool pool(Kind kind, int parallelism) {
+    return pools.computeIfAbsent(kind, k -> new HashMap<>())
+        .computeIfAbsent(parallelism, p -> new ForkJoinPool(p));
+  }
+}
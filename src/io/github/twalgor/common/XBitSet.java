@@ -99,9 +99,12 @@ public class XBitSet extends BitSet
    *         of the argument {@code XBitSet}
   */
   public boolean isSubset(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.andNot(set);
-    return tmp.isEmpty();
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      if (!set.get(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -113,9 +116,7 @@ public class XBitSet extends BitSet
    *  disjoint from the argument {@code XBitSet}
   */
   public boolean isDisjoint(XBitSet set) {
-    BitSet tmp = (BitSet) this.clone();
-    tmp.and(set);
-    return tmp.isEmpty();
+    return !super.intersects(set);
   }
 
   /**
@@ -140,9 +141,7 @@ public class XBitSet extends BitSet
    *  of the argument {@code XBitSet}
   */
   public boolean isSuperset(XBitSet set) {
-    BitSet tmp = (BitSet) set.clone();
-    tmp.andNot(this);
-    return tmp.isEmpty();
+    return set.isSubset(this);
   }
   
   /**
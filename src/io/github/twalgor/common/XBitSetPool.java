@@ -0,0 +1,65 @@
+package io.github.twalgor.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of interned vertex sets.  
+ * {@code intern} returns, for each distinct set of members,
+ * a single {@code FrozenXBitSet} instance, which can be used as a map key 
+ * with a precomputed hash code and identity equality, and be shared by 
+ * all the data structures referring to the same vertex set.
+ * A pool is meant to be owned by a single solver instance, 
+ * and is not thread-safe unless created as concurrent.
+ * To release the interned sets, drop the pool
+ * and start a new one: sets from different pools compare by their members.
+ */
+public class XBitSetPool {
+  private Map<XBitSet, FrozenXBitSet> map;
+
+  public XBitSetPool() {
+    this(false);
+  }
+
+  /**
+   * Creates a pool, which may be used by several threads at the same
+   * time if so specified
+   * @param concurrent {@code true} for a thread-safe pool
+   */
+  public XBitSetPool(boolean concurrent) {
+    if (concurrent) {
+      map = new ConcurrentHashMap<>();
+    }
+    else {
+      map = new HashMap<>();
+    }
+  }
+
+  /**
+   * Returns the canonical instance of the given set in this pool,
+   * creating it if necessary. The argument is not retained.
+   * @param set the set to be interned
+   * @return the frozen set with the same members
+   */
+  public FrozenXBitSet intern(XBitSet set) {
+    if (set instanceof FrozenXBitSet &&
+        ((FrozenXBitSet) set).pool == this) {
+      return (FrozenXBitSet) set;
+    }
+    FrozenXBitSet f = map.get(set);
+    if (f == null) {
+      f = new FrozenXBitSet(set, this);
+      FrozenXBitSet f1 = map.putIfAbsent(f, f);
+      if (f1 != null) {
+        // interned by another thread in the meantime
+        f = f1;
+      }
+    }
+    return f;
+  }
+
+  public int size() {
+    return map.size();
+  }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.TreeDecomposition;
@@ -17,6 +18,9 @@ public class SemiExact {
   public Set<XBitSet> minSeps;
   SemiPID spid;
   public boolean isExact;
+  // passed to the generation of the separators and to SemiPID,
+  // which throw DeadlineExceededException once this is expired
+  public Deadline deadline = Deadline.NONE;
   
   public SemiExact(Graph g, int k, Set<XBitSet> minSeps, int nMinSeps) {
     assert g.isConnected(g.all);
@@ -57,6 +61,7 @@ public class SemiExact {
 //    System.out.println(minSeps.size() + " minSeps");
     if (minSeps.size() < nMinSeps) {
       MinSepsGenerator msg = new MinSepsGenerator(g, k);
+      msg.deadline = deadline;
       msg.generate();
       minSeps = msg.minSeps;
       isExact = true;
@@ -64,13 +69,14 @@ public class SemiExact {
     for (XBitSet sep: minSeps) {
       assert sep.cardinality() <= k;
     }
-    spid = new SemiPID(g, k, minSeps, false);
+    spid = new SemiPID(g, k, minSeps, false, deadline);
     return spid.isFeasible();
   }
   
   void expandMinSeps() {
     int n = minSeps.size();
     while (n < nMinSeps) {
+      deadline.check();
       XBitSet[] msa = minSeps.toArray(new XBitSet[minSeps.size()]);
       for (XBitSet minSep: msa) {
         expand(minSep);
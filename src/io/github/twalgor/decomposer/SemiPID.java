@@ -6,14 +6,27 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.DeadlineExceededException;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.VertexSet;
+import io.github.twalgor.common.WorkerPools;
+import io.github.twalgor.common.WorkerPools.Kind;
 import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.common.XBitSetPool;
 import io.github.twalgor.greedy.MMAF;
 import io.github.twalgor.minseps.MinSepsGenerator;
 import io.github.twalgor.sieve.SubblockSieve;
@@ -30,13 +43,28 @@ static final boolean CONSTRUCT_TD = false;
   static boolean TRACE = false;
 //  static final boolean TRACE_ROOT = true;
   static final boolean TRACE_ROOT = false;
+  // the number of threads of dp, for the instances created afterwards; 
+  // 1 for the sequential dp
+  public static int PARALLELISM = 1;
+  // the layers smaller than this are examined sequentially
+  static int MIN_PARALLEL_LAYER = 8;
   
   Graph g;
   String graphName;
   public int k;
   public Set<XBitSet> minSeps;
   boolean pmcOnly;
+  // the procedures throw DeadlineExceededException once this is expired
+  Deadline deadline = Deadline.NONE;
+  int parallelism = PARALLELISM;
+  // the instance for the width one less, tried and failed, whose
+  // feasible components are feasible with the same caps for this width,
+  // and the minimal separators of this instance not given to it;
+  // released after dp
+  SemiPID below;
+  Set<XBitSet> minSepsAdded;
   public Map<XBitSet, XBitSet> feasiblesMap;
+  XBitSetPool pool;
   ArrayList<XBitSet> minSeparateds;
   
   XBitSet rootKnown;
@@ -56,31 +84,122 @@ static final boolean CONSTRUCT_TD = false;
   }
 
   public static TreeDecomposition decompose(Graph g, boolean pmcOnly) {
-    for (int k = g.minDegree(); k < g.n; k++) {
-      SemiPID spid = new SemiPID(g, k, pmcOnly);
+    return decompose(g, pmcOnly, Deadline.NONE);
+  }
+
+  /**
+   * Decomposes the graph optimally, trying the widths in the increasing
+   * order
+   * @param g the graph
+   * @param pmcOnly passed to the instances for the widths tried
+   * @param deadline the deadline
+   * @return an optimal tree decomposition of {@code g}
+   * @throws DeadlineExceededException if the deadline expires
+   */
+  public static TreeDecomposition decompose(Graph g, boolean pmcOnly, 
+      Deadline deadline) {
+    return decompose(g, g.minDegree(), pmcOnly, deadline);
+  }
+
+  /**
+   * Decomposes the graph optimally, trying the widths in the increasing
+   * order from the given lower bound.  For a connected graph, the 
+   * feasible components found for a width are carried over to the next
+   * with their caps, and only the full components of the minimal 
+   * separators new to a width are listed for it.
+   * @param g the graph
+   * @param lb a lower bound on the treewidth of {@code g}
+   * @param pmcOnly passed to the instances for the widths tried
+   * @param deadline the deadline
+   * @return an optimal tree decomposition of {@code g}
+   * @throws DeadlineExceededException if the deadline expires
+   */
+  public static TreeDecomposition decompose(Graph g, int lb, 
+      boolean pmcOnly, Deadline deadline) {
+    return decompose(g, lb, pmcOnly, deadline, null);
+  }
+
+  /**
+   * Decomposes the graph optimally as above, passing the lower bound 
+   * to the given receiver each time a width is found infeasible
+   * @param g the graph
+   * @param lb a lower bound on the treewidth of {@code g}
+   * @param pmcOnly passed to the instances for the widths tried
+   * @param deadline the deadline
+   * @param lbRaised receives the width found infeasible plus one;
+   * may be {@code null}
+   * @return an optimal tree decomposition of {@code g}
+   * @throws DeadlineExceededException if the deadline expires
+   */
+  public static TreeDecomposition decompose(Graph g, int lb, 
+      boolean pmcOnly, Deadline deadline, IntConsumer lbRaised) {
+    int k0 = Math.max(lb, g.minDegree());
+    if (k0 >= g.n - 1 || !g.isConnected(g.all)) {
+      for (int k = k0; k < g.n; k++) {
+        SemiPID spid = new SemiPID(g, k, pmcOnly, deadline);
+        TreeDecomposition td = spid.decompose();
+        if (td != null) {
+          return td;
+        }
+        if (lbRaised != null) {
+          lbRaised.accept(k + 1);
+        }
+      }
+      assert false: g.n + ", " + g.numberOfEdges();
+      return null;
+    }
+    SemiPID below = null;
+    for (int k = k0; k < g.n; k++) {
+      SemiPID spid = new SemiPID(g, k, pmcOnly, deadline);
+      if (below != null) {
+        // the separators for a width include those for smaller widths
+        spid.below = below;
+        spid.minSepsAdded = new HashSet<>(spid.minSeps);
+        spid.minSepsAdded.removeAll(below.minSeps);
+      }
       TreeDecomposition td = spid.decompose();
       if (td != null) {
         return td;
       }
+      if (lbRaised != null) {
+        lbRaised.accept(k + 1);
+      }
+      below = spid;
     }
     assert false: g.n + ", " + g.numberOfEdges();
     return null;
   }
 
   public SemiPID(Graph g, int k, boolean pmcOnly) {
+    this(g, k, pmcOnly, Deadline.NONE);
+  }
+   
+  public SemiPID(Graph g, int k, boolean pmcOnly, Deadline deadline) {
     this.g = g;
     this.k = k;
     this.pmcOnly = pmcOnly;
-    MinSepsGenerator msg = new MinSepsGenerator(g, k);
-    msg.generate();
-    minSeps = msg.minSeps;
+    this.deadline = deadline;
+    minSeps = generateMinSeps();
   }
    
   public SemiPID(Graph g, int k, Set<XBitSet> minSeps, boolean pmcOnly) {
+    this(g, k, minSeps, pmcOnly, Deadline.NONE);
+  }
+
+  public SemiPID(Graph g, int k, Set<XBitSet> minSeps, boolean pmcOnly,
+      Deadline deadline) {
     this.g = g;
     this.k = k;
     this.minSeps = minSeps;
     this.pmcOnly = pmcOnly;
+    this.deadline = deadline;
+  }
+
+  Set<XBitSet> generateMinSeps() {
+    MinSepsGenerator msg = new MinSepsGenerator(g, k);
+    msg.deadline = deadline;
+    msg.generate();
+    return msg.minSeps;
   }
   
   public Set<XBitSet> getCaps() {
@@ -138,7 +257,7 @@ static final boolean CONSTRUCT_TD = false;
       TreeDecomposition td = new TreeDecomposition(0, 0, g);
       for (XBitSet compo: components) {
         Subgraph sub = new Subgraph(g, compo);
-        SemiPID spid = new SemiPID(sub.h, k, null, pmcOnly);
+        SemiPID spid = new SemiPID(sub.h, k, null, pmcOnly, deadline);
         TreeDecomposition td1 = spid.decompose();
         if (td1 == null) {
           return null;
@@ -165,9 +284,7 @@ static final boolean CONSTRUCT_TD = false;
       return td;
     }
     if (minSeps == null) {
-      MinSepsGenerator msg = new MinSepsGenerator(g, k);
-      msg.generate();
-      minSeps = msg.minSeps;
+      minSeps = generateMinSeps();
     }
     
     dp();
@@ -196,7 +313,7 @@ static final boolean CONSTRUCT_TD = false;
       ArrayList<XBitSet> components = g.componentsOf(g.all);
       for (XBitSet compo: components) {
         Subgraph sub = new Subgraph(g, compo);
-        SemiPID spid = new SemiPID(sub.h, k, null, pmcOnly);
+        SemiPID spid = new SemiPID(sub.h, k, null, pmcOnly, deadline);
         if (!spid.isFeasible()) {
           return false;
         }
@@ -205,9 +322,7 @@ static final boolean CONSTRUCT_TD = false;
     }
     
     if (minSeps == null) {
-      MinSepsGenerator msg = new MinSepsGenerator(g, k);
-      msg.generate();
-      minSeps = msg.minSeps;
+      minSeps = generateMinSeps();
     }
     
     dp();
@@ -222,9 +337,16 @@ static final boolean CONSTRUCT_TD = false;
   }
 
   public void dp() {
-    minSeparateds = new ArrayList<>();
+    Set<XBitSet> seps = minSeps;
+    if (below != null && below.minSeparateds != null) {
+      minSeparateds = new ArrayList<>(below.minSeparateds);
+      seps = minSepsAdded;
+    }
+    else {
+      minSeparateds = new ArrayList<>();
+    }
     
-    for (XBitSet sep: minSeps) {
+    for (XBitSet sep: seps) {
       assert sep.cardinality() <= k;
       ArrayList<XBitSet> fulls = g.fullComponents(sep);
       for (XBitSet full: fulls) {
@@ -237,23 +359,123 @@ static final boolean CONSTRUCT_TD = false;
     minSeparateds.sort(XBitSet.cardinalityComparator);
     
     feasiblesMap = new HashMap<>();
+    pool = below != null && below.pool != null ? 
+        below.pool : new XBitSetPool();
 
     sieve = new SubblockSieve[g.n];
     for (int v = 0; v < g.n; v++) {
       sieve[v] = new SubblockSieve(g, k + 1);
     }
 
-    for (XBitSet component: minSeparateds) {
-      XBitSet sep = g.neighborSet(component);
-      XBitSet cap = findCap(component, sep, null);
+    if (parallelism > 1) {
+      dpByLayers();
+    }
+    else {
+      for (XBitSet component: minSeparateds) {
+        deadline.check();
+        XBitSet cap = capOf(component);
+        if (cap != null) {
+          addFeasible(component, g.neighborSet(component), cap);
+        }
+      }
+    }
+    below = null;
+    minSepsAdded = null;
+  }
+
+  XBitSet capOf(XBitSet component) {
+    if (below != null && below.feasiblesMap != null) {
+      XBitSet cap = below.feasiblesMap.get(component);
       if (cap != null) {
-        if (TRACE) {
-          System.out.println(indent(component) + 
-                "block: " + component);
+        return cap;
+      }
+    }
+    return findCap(component, g.neighborSet(component), null);
+  }
+
+  void addFeasible(XBitSet component, XBitSet sep, XBitSet cap) {
+    if (TRACE) {
+      System.out.println(indent(component) + 
+          "block: " + component);
+    }
+    component = pool.intern(component);
+    feasiblesMap.put(component, pool.intern(cap));
+    sieve[component.nextSetBit(0)].add(component, sep);
+  }
+
+  /**
+   * The dp with the components of each cardinality examined in parallel.
+   * A cap of a component is found from the feasible components strictly
+   * contained in it, so the components of the same cardinality do not
+   * depend on each other: each such layer is examined against the sieves
+   * and the map built from the layers below, which are not modified 
+   * meanwhile, and merged into them afterwards in the sequential order.
+   * The feasible components and their caps are thus the same as those
+   * of the sequential dp.
+   */
+  void dpByLayers() {
+    ForkJoinPool executor = WorkerPools.pool(Kind.DP, parallelism);
+    int i = 0;
+    while (i < minSeparateds.size()) {
+      deadline.check();
+      int c = minSeparateds.get(i).cardinality();
+      int j = i + 1;
+      while (j < minSeparateds.size() && 
+          minSeparateds.get(j).cardinality() == c) {
+        j++;
+      }
+      List<XBitSet> layer = minSeparateds.subList(i, j);
+      XBitSet[] caps = new XBitSet[layer.size()];
+      if (layer.size() < MIN_PARALLEL_LAYER) {
+        for (int t = 0; t < caps.length; t++) {
+          caps[t] = capOf(layer.get(t));
         }
-        feasiblesMap.put(component, cap);
-        sieve[component.nextSetBit(0)].add(component, sep);
       }
+      else {
+        AtomicInteger next = new AtomicInteger();
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < parallelism; w++) {
+          tasks.add(() -> {
+            for (int t = next.getAndIncrement(); t < caps.length;
+                t = next.getAndIncrement()) {
+              caps[t] = capOf(layer.get(t));
+            }
+            return null;
+          });
+        }
+        for (Future<Void> f: executor.invokeAll(tasks)) {
+          join(f);
+        }
+      }
+      for (int t = 0; t < caps.length; t++) {
+        if (caps[t] != null) {
+          XBitSet component = layer.get(t);
+          addFeasible(component, g.neighborSet(component), caps[t]);
+        }
+      }
+      i = j;
+    }
+  }
+
+  /**
+   * Waits for the task, rethrowing what it has thrown,
+   * {@code DeadlineExceededException} in particular, as it is
+   */
+  static void join(Future<Void> f) {
+    try {
+      f.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DeadlineExceededException();
     }
   }
   
@@ -284,7 +506,7 @@ static final boolean CONSTRUCT_TD = false;
           return;
         }
 //        System.out.println("cap " + cap1 + " found for " + compo);
-        feasiblesMap.put(compo, cap1);  
+        feasiblesMap.put(pool.intern(compo), pool.intern(cap1));  
       }
     }
 //    System.out.println("now generate from " + cap);
@@ -525,6 +747,7 @@ static final boolean CONSTRUCT_TD = false;
   }
 
   XBitSet findCap(XBitSet component, XBitSet sep, XBitSet knownCap) {
+    deadline.check();
     if (TRACE || knownCap != null && sep.isSubset(knownCap)) {
       System.out.println(indent(component) + "findCap " + component + ", " + sep);
       if (knownCap != null) {
@@ -537,41 +760,57 @@ static final boolean CONSTRUCT_TD = false;
     }
     int v0 = component.nextSetBit(0);
 
-    ArrayList<XBitSet> candidates = sieve[v0].get(component, sep);
-    for (XBitSet cand: candidates) {
-      XBitSet candSep = g.neighborSet(cand);
+    VertexSet compoW = new VertexSet(g.n, component);
+    VertexSet sepW = new VertexSet(g.n, sep);
+    VertexSet candW = new VertexSet(g.n);
+    VertexSet candSep = new VertexSet(g.n);
+    VertexSet union = new VertexSet(g.n);
+    VertexSet rest = new VertexSet(g.n);
+    // the candidates are streamed from the sieve, so that 
+    // the rest of them are not retrieved once a cap is found
+    XBitSet[] found = new XBitSet[1];
+    sieve[v0].get(compoW, sepW, cand -> {
+      candW.copyFrom(cand);
+      g.neighborSet(candW, candSep);
       if (TRACE || knownCap != null && sep.isSubset(knownCap)) {
         System.out.println(indent(component) + "cand = " + cand + ", candSep = " + candSep);
       }
-      if (sep.isSubset(candSep)) {
-        if (otherFullsAllFeasible(candSep, cand, component)) {
-          return candSep;  
-        }
-        else {
-          continue;
+      if (sepW.isSubset(candSep)) {
+        compoW.subtract(candW, rest).andNot(candSep);
+        if (otherFullsAllFeasible(rest, candSep)) {
+          found[0] = candSep.toXBitSet();
+          return false;
         }
+        return true;
       }
-      XBitSet union = sep.unionWith(candSep);
-      assert !union.equals(sep);
+      sepW.unionWith(candSep, union);
+      assert !union.equals(sepW);
       assert union.cardinality() <= k + 1;
-      XBitSet cap = tryUnion(component.subtract(cand).subtract(union), union, knownCap);
+      compoW.subtract(candW, rest).andNot(union);
+      XBitSet cap = tryUnion(rest, union, knownCap);
       if (TRACE || knownCap != null && sep.isSubset(knownCap)) {
         System.out.println(indent(component) + "cap = " + cap);
       }
-      if (cap != null) {
-        return cap;
-      }
+      found[0] = cap;
+      return cap == null;
+    });
+    if (found[0] != null) {
+      return found[0];
     }
     if (TRACE || knownCap != null && sep.isSubset(knownCap)) {
       System.out.println(indent(component) + "try adding " + v0 + " to the bag");
     }
-    return tryUnion(component.removeBit(v0), sep.addBit(v0), knownCap);
+    rest.copyFrom(compoW);
+    rest.clear(v0);
+    union.copyFrom(sepW);
+    union.set(v0);
+    return tryUnion(rest, union, knownCap);
   }
 
-  boolean  otherFullsAllFeasible(XBitSet candSep, XBitSet cand, XBitSet component) {
+  boolean  otherFullsAllFeasible(VertexSet rest, VertexSet candSep) {
     ArrayList<XBitSet> fulls = new ArrayList<>();
     ArrayList<XBitSet> nonFulls = new ArrayList<>();
-    g.listComponents(component.subtract(cand).subtract(candSep), candSep, fulls, nonFulls);
+    g.listComponents(rest, candSep, fulls, nonFulls);
     for (XBitSet full: fulls) {
 //      System.out.println("full " + full + " examined");
       if (feasiblesMap.get(full) == null) {
@@ -581,9 +820,13 @@ static final boolean CONSTRUCT_TD = false;
     return true;
   }
 
-  XBitSet tryUnion(XBitSet scope, XBitSet union, XBitSet knownCap) {
+  /**
+   * {@code scope} and {@code union} are scratch sets of the caller,
+   * not referred to after this method returns
+   */
+  XBitSet tryUnion(VertexSet scope, VertexSet union, XBitSet knownCap) {
     if (TRACE || knownCap != null && union.isSubset(knownCap)) {
-      System.out.println(indent(scope) + "tryUnion0 " + 
+      System.out.println(indent(scope.cardinality()) + "tryUnion0 " + 
           scope + ", " + union);
     }
     ArrayList<XBitSet> fulls = new ArrayList<>();
@@ -592,18 +835,19 @@ static final boolean CONSTRUCT_TD = false;
     for (XBitSet compo: nonFulls) {
       if (feasiblesMap.get(compo) == null) {
         if (TRACE || knownCap != null && union.isSubset(knownCap)) {
-          System.out.println(indent(scope) + "infeasible, returninig null, compo = " + compo);
+          System.out.println(indent(scope.cardinality()) + "infeasible, returninig null, compo = " + compo);
         }
         return null;
       }
     }
     if (fulls.isEmpty()) {
       if (TRACE) {
-        System.out.println(indent(scope) + "no fulls, returninig " + 
+        System.out.println(indent(scope.cardinality()) + "no fulls, returninig " + 
             union);
       }
-      if (!pmcOnly || g.isCliquish(union)) {
-        return union;
+      XBitSet cap = union.toXBitSet();
+      if (!pmcOnly || g.isCliquish(cap)) {
+        return cap;
       }
       else {
         return null;
@@ -613,31 +857,32 @@ static final boolean CONSTRUCT_TD = false;
       for (XBitSet full: fulls) {
         if (feasiblesMap.get(full) == null) {
           if (TRACE) {
-            System.out.println(indent(scope) + 
+            System.out.println(indent(scope.cardinality()) + 
                 "infeasible full in at leaste two fulls, returninig null");
           }
           return null;
         }
       }
       if (TRACE) {
-        System.out.println(indent(scope) + 
+        System.out.println(indent(scope.cardinality()) + 
             "at least two fulls, all feasible, returninig " + union);
       }
-      return union;
+      return union.toXBitSet();
     }
     if (union.cardinality() == k + 1) {
       if (TRACE) {
-        System.out.println(indent(scope) + 
+        System.out.println(indent(scope.cardinality()) + 
             "no room for extending, returninig null");
       }
       return null;
     }
     assert fulls.size() == 1;
     XBitSet full = fulls.get(0);
-    return findCap(full, union, knownCap);
+    return findCap(full, union.toXBitSet(), knownCap);
   }
 
   XBitSet findCapForRoot(XBitSet component, XBitSet sep, XBitSet capKnown) {
+    deadline.check();
     boolean toTrace = false;
     if (capKnown != null && sep.isSubset(capKnown) &&
         capKnown.isSubset(component.unionWith(sep))) {
@@ -652,14 +897,11 @@ static final boolean CONSTRUCT_TD = false;
     }
     int v0 = smallestForRoot(component);
 
-    ArrayList<XBitSet> candidates = sieveForRoot[v0].get(component, sep);
-    if (TRACE_ROOT || toTrace) {
-      System.out.println(indent(component) + candidates.size() + " candidates");
-    }
-
-    for (XBitSet cand: candidates) {
+    boolean trace = TRACE_ROOT || toTrace;
+    XBitSet[] found = new XBitSet[1];
+    sieveForRoot[v0].get(component, sep, cand -> {
       XBitSet candSep = g.neighborSet(cand);
-      if (TRACE_ROOT || toTrace) {
+      if (trace) {
         System.out.println(indent(component) + "cand = " + cand);
         System.out.println(indent(component) + "candSep = " + candSep);
       }
@@ -670,10 +912,11 @@ static final boolean CONSTRUCT_TD = false;
 //      System.out.println("cand = " + cand);
 //      System.out.println("sep = " + sep);
 //      System.out.println("union = " + union);
-      XBitSet cap = tryUnionForRoot(component.subtract(cand).subtract(union), union, capKnown);
-      if (cap != null) {
-        return cap;
-      }
+      found[0] = tryUnionForRoot(component.subtract(cand).subtract(union), union, capKnown);
+      return found[0] == null;
+    });
+    if (found[0] != null) {
+      return found[0];
     }
     if (TRACE_ROOT || toTrace) {
       System.out.println(indent(component) + v0 + " should be in tha bag");
@@ -787,7 +1030,11 @@ static final boolean CONSTRUCT_TD = false;
   }
   
   String indent(XBitSet compo) {
-    return spaces((g.n - compo.cardinality()) * LINE_LENGTH / g.n);
+    return indent(compo.cardinality());
+  }
+
+  String indent(int size) {
+    return spaces((g.n - size) * LINE_LENGTH / g.n);
   }
   
   static String spaces(int n) {
@@ -3,7 +3,6 @@ package io.github.twalgor.improver;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -12,11 +11,14 @@ import java.util.Set;
 
 import io.github.twalgor.btdp.Value;
 import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.WordKeyMap;
 import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.common.XBitSetPool;
 import io.github.twalgor.greedy.MMAF;
 import io.github.twalgor.sieve.SubblockSieve;
 
@@ -34,7 +36,19 @@ public class PIDImprover {
   
   Map<XBitSet, Block> blockMap;
   public Map<XBitSet, PMC> pmcMap;
+  // interns the vertex sets of the blocks and the PMCs, once when 
+  // created, and the separators of the blocks; the maps above are keyed
+  // by the interned sets
+  XBitSetPool pool;
+  // true if the maps above are WordKeyMaps, which are looked up by the
+  // words of a set rather than by its interned instance
+  boolean wordKeys;
   Set<Block> newBlocks;
+  // the PMCs and blocks created, and the blocks whose values have
+  // changed, since the last doDP
+  ArrayList<PMC> newPMCs = new ArrayList<>();
+  ArrayList<Block> unevaluated = new ArrayList<>();
+  ArrayList<Block> changed = new ArrayList<>();
   
   SubblockSieve[] subfeasiblesSieve;
   Queue<Block> queue;
@@ -45,6 +59,9 @@ public class PIDImprover {
   Block whole;
   
   int nTicks;
+  // the improvement stops, as on the exhaustion of the budget, 
+  // once this is expired
+  public Deadline deadline = Deadline.NONE;
   
   public PIDImprover(Graph g) {
     super();
@@ -54,8 +71,10 @@ public class PIDImprover {
       System.out.println("ResourceBoundedPID created n " + g.n  + " m " +  g.numberOfEdges());
     }
 
-    blockMap = new HashMap<>();
-    pmcMap = new HashMap<>();
+    blockMap = WordKeyMap.forGraph(g.n);
+    pmcMap = WordKeyMap.forGraph(g.n);
+    pool = new XBitSetPool();
+    wordKeys = blockMap instanceof WordKeyMap;
     queue = new PriorityQueue<>();
     whole = makeBlock(g.all);
   }
@@ -80,18 +99,40 @@ public class PIDImprover {
     return pmcs;
   }
   
+  /**
+   * Brings the values of the blocks up to date.  Only the blocks whose
+   * values may change are evaluated: those not evaluated yet,
+   * those capped by the PMCs created since the last call and those 
+   * capped by a PMC with a block whose value has changed since,
+   * in the order of their cardinalities, so that a block is evaluated
+   * after the blocks its value depends on
+   */
   void doDP() {
-    for (PMC p: pmcMap.values()) {
+    PriorityQueue<Block> work = new PriorityQueue<>((b1, b2) ->
+        XBitSet.cardinalityComparator.compare(b1.vertices, b2.vertices));
+    Set<Block> inWork = new HashSet<>();
+    for (PMC p: newPMCs) {
       p.registerAsCap();
+      for (Block block: p.capped) {
+        if (inWork.add(block)) {
+          work.add(block);
+        }
+      }
     }
-    
-    Block[] ba = blockMap.values().toArray(new Block[blockMap.size()]);
-
-    Arrays.sort(ba, (b1, b2) ->
-    XBitSet.cardinalityComparator.compare(b1.vertices, b2.vertices));
+    newPMCs.clear();
+    for (Block block: unevaluated) {
+      if (inWork.add(block)) {
+        work.add(block);
+      }
+    }
+    unevaluated.clear();
+    addCappedAboveChanged(work, inWork);
 
-    for (Block block: ba) {
+    while (!work.isEmpty()) {
+      Block block = work.remove();
+      inWork.remove(block);
       block.evaluate();
+      addCappedAboveChanged(work, inWork);
     }
     if (whole.value != null && 
         (opt == null || whole.value.compareTo(opt) < 0)) {
@@ -99,6 +140,19 @@ public class PIDImprover {
     }
   }
 
+  void addCappedAboveChanged(Queue<Block> work, Set<Block> inWork) {
+    for (Block block: changed) {
+      for (PMC p: block.users) {
+        for (Block b: p.capped) {
+          if (inWork.add(b)) {
+            work.add(b);
+          }
+        }
+      }
+    }
+    changed.clear();
+  }
+
   public void improve(int budget) {
     assert opt != null;
     this.budget = budget;
@@ -120,7 +174,7 @@ public class PIDImprover {
       }
     }
     
-    while (!queue.isEmpty() && nTicks < budget) {
+    while (!queue.isEmpty() && nTicks < budget && !deadline.isExpired()) {
       Block toProcess = queue.remove();
       if (TRACE) {
         System.out.println("toProcess " + toProcess);
@@ -167,19 +221,32 @@ public class PIDImprover {
 
   
   PMC makePMC(XBitSet separator) {
+    if (!wordKeys) {
+      separator = pool.intern(separator);
+    }
     PMC p = pmcMap.get(separator);
     if (p == null) {
+      separator = pool.intern(separator);
       p = new PMC(separator);
       pmcMap.put(separator, p);
+      for (Block block: p.blocks) {
+        block.users.add(p);
+      }
+      newPMCs.add(p);
     }
     return p;
   }
   
   Block makeBlock(XBitSet component)  {
+    if (!wordKeys) {
+      component = pool.intern(component);
+    }
     Block f = blockMap.get(component);
     if (f == null) {
+      component = pool.intern(component);
       f = new Block(component);
       blockMap.put(component, f);
+      unevaluated.add(f);
       if (newBlocks != null) {
         newBlocks.add(f);
       }
@@ -195,6 +262,8 @@ public class PIDImprover {
     Value value;
     Set<PMC> caps;
     Set<PMC> waiters;
+    // the PMCs having this block as one of their blocks
+    ArrayList<PMC> users = new ArrayList<>();
     
     Block(XBitSet vertices) {
       this(vertices, g.neighborSet(vertices));
@@ -202,13 +271,14 @@ public class PIDImprover {
 
     Block(XBitSet vertices, XBitSet separator) {
       this.vertices = vertices;
-      this.separator = separator;
+      this.separator = pool.intern(separator);
     }
    
     void evaluate() {
       if (TRACE_DP) {
         System.out.println("evaluating " + this);
       }
+      Value oldValue = value;
       int n = vertices.unionWith(separator).cardinality();
       value = new Value(n - 1, 1);
       if (caps != null) {
@@ -219,6 +289,9 @@ public class PIDImprover {
            }
         }
       }
+      if (oldValue == null || value.compareTo(oldValue) != 0) {
+        changed.add(this);
+      }
       if (TRACE_DP) {
         System.out.println("evaluated " + this);
       }
@@ -247,7 +320,7 @@ public class PIDImprover {
     
     void search(XBitSet scope, XBitSet sep) {
       nTicks++;
-      if (nTicks > budget) {
+      if (nTicks > budget || deadline.isExpired()) {
         return;
       }
       assert sep.cardinality() <= opt.width;
@@ -425,6 +498,8 @@ public class PIDImprover {
   class PMC {
     XBitSet separator;
     Block[] blocks;
+    // the blocks this PMC is registered as a cap of
+    ArrayList<Block> capped;
     
     PMC(XBitSet separator) {
       this.separator = separator;
@@ -438,12 +513,15 @@ public class PIDImprover {
     }
 
     void registerAsCap() {
+      capped = new ArrayList<>();
       for (Block block: innerBlocks()) {
         assert block != null;
         block.addCap(this);
+        capped.add(block);
       }
       if (allBlocksSmall()) {
         whole.addCap(this);
+        capped.add(whole);
       }
     }
     
@@ -1,6 +1,7 @@
 package io.github.twalgor.improver;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -10,14 +11,27 @@ import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.ComponentScanner;
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.VertexSet;
+import io.github.twalgor.common.WordKeyMap;
+import io.github.twalgor.common.WorkerPools;
+import io.github.twalgor.common.WorkerPools.Kind;
 import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.common.XBitSetPool;
 import io.github.twalgor.decomposer.SemiPID;
 import io.github.twalgor.greedy.MMAF;
 import io.github.twalgor.sieve.SubblockSieve;
@@ -37,6 +51,17 @@ static boolean VERIFY = true;
 
   static int N_CONDUCIVES = 1000;
   static boolean FINISH_BY_SEMIPID = true;
+  // capacity of the isPMC result cache set on the graph; 0 for no cache.
+  // off by default: the hit rate measured on random instances is below 10%
+  static int PMC_CACHE_SIZE = 0;
+  // the number of threads searching from the queued blocks, 
+  // for the instances created afterwards; 1 for the sequential search
+  public static int PARALLELISM = 1;
+  
+  static final AtomicIntegerFieldUpdater<PIDIterative> N_TICKS =
+      AtomicIntegerFieldUpdater.newUpdater(PIDIterative.class, "nTicks");
+  static final AtomicIntegerFieldUpdater<Block> WIDTH =
+      AtomicIntegerFieldUpdater.newUpdater(Block.class, "width");
   
   Graph g;
   public int k;
@@ -45,16 +70,39 @@ static boolean VERIFY = true;
   
   Map<XBitSet, Block> blockMap;
   public Map<XBitSet, PMC> pmcMap;
+  // interns the vertex sets of the blocks and the PMCs, once when 
+  // created, and the separators of the blocks; the maps above are keyed
+  // by the interned sets
+  XBitSetPool pool;
+  // true if the maps above are WordKeyMaps, which are looked up by the
+  // words of a set rather than by its interned instance
+  boolean wordKeys;
   
   SubblockSieve[] feasiblesSieve;
   Queue<Block> queue;
+  // the PMCs created and the blocks whose width has been lowered 
+  // since the last btDP
+  Queue<PMC> newPMCs;
+  Queue<Block> lowered;
   Set<XBitSet> feasibles;
   
   Block whole;
 
   int nsf;
-  public int nTicks;
+  public volatile int nTicks;
   public boolean suspended;
+  // the search stops, as if suspended, once this is expired
+  public Deadline deadline = Deadline.NONE;
+  
+  int parallelism;
+  // the executor of the searches while the parallel search is running;
+  // null otherwise
+  Executor executor;
+  // the number of searches submitted and not yet finished
+  AtomicInteger pending;
+  volatile boolean halted;
+  volatile boolean wholeReached;
+  volatile Throwable failure;
   
   boolean testing;
 
@@ -68,13 +116,38 @@ static boolean VERIFY = true;
       System.out.println("PIDImprover created n " + g.n  + " m " +  g.numberOfEdges() + " k " + k);
     }
 
-    blockMap = new HashMap<>();
-    pmcMap = new HashMap<>();
-    queue = new PriorityQueue<>();
+    parallelism = PARALLELISM;
+    newMaps();
     whole = makeBlock(g.all);
-    
+    if (parallelism > 1) {
+      pending = new AtomicInteger();
+    }
+    if (PMC_CACHE_SIZE > 0) {
+      g.setPMCCache(PMC_CACHE_SIZE);
+    }
   }
   
+  void newMaps() {
+    if (parallelism > 1) {
+      blockMap = new ConcurrentHashMap<>();
+      pmcMap = new ConcurrentHashMap<>();
+      pool = new XBitSetPool(true);
+      wordKeys = false;
+      queue = new PriorityBlockingQueue<>();
+      newPMCs = new ConcurrentLinkedQueue<>();
+      lowered = new ConcurrentLinkedQueue<>();
+    }
+    else {
+      blockMap = WordKeyMap.forGraph(g.n);
+      pmcMap = WordKeyMap.forGraph(g.n);
+      pool = new XBitSetPool();
+      wordKeys = blockMap instanceof WordKeyMap;
+      queue = new PriorityQueue<>();
+      newPMCs = new ArrayDeque<>();
+      lowered = new ArrayDeque<>();
+    }
+  }
+
   public PIDIterative(Graph g, int k, Set<XBitSet> pmcs) {
     this(g, k);
     importPMCs(pmcs);
@@ -114,64 +187,120 @@ static boolean VERIFY = true;
     }  
   }
   
+  /**
+   * Brings the widths of the blocks up to date with the PMCs. 
+   * Only the PMCs that may give a smaller width than before are 
+   * evaluated: those created since the last call and those having
+   * an inner block whose width has been lowered since, in the order of 
+   * the cardinalities of the blocks they cap, so that a PMC is evaluated 
+   * after its inner blocks; each lowering found puts the PMCs above 
+   * the block lowered to the work list.
+   */
   void btDP() {
-    for (PMC p: pmcMap.values()) {
-      p.registerAsCap();
+    PriorityQueue<PMC> work = new PriorityQueue<>((p1, p2) ->
+        XBitSet.cardinalityComparator.compare(p1.toCap.vertices, p2.toCap.vertices));
+    Set<PMC> inWork = new HashSet<>();
+    PMC p;
+    while ((p = newPMCs.poll()) != null) {
+      if (inWork.add(p)) {
+        work.add(p);
+      }
     }
-    
-    Block[] ba = blockMap.values().toArray(new Block[blockMap.size()]);
-
-    Arrays.sort(ba, (b1, b2) -> XBitSet.cardinalityComparator.compare(b1.vertices, b2.vertices));
+    addUsersOfLowered(work, inWork);
+    while (!work.isEmpty()) {
+      p = work.remove();
+      inWork.remove(p);
+      p.evaluate();
+      addUsersOfLowered(work, inWork);
+    }
+  }
 
-    for (Block block: ba) {
-      if (block.isSmall()) {
-        block.evaluate();
+  void addUsersOfLowered(Queue<PMC> work, Set<PMC> inWork) {
+    Block block;
+    while ((block = lowered.poll()) != null) {
+      for (PMC p: block.users) {
+        if (inWork.add(p)) {
+          work.add(p);
+        }
       }
     }
-    whole.evaluate();
   }
   
+  /**
+   * Runs the search for at most about {@code budget} ticks, 
+   * or until the deadline expires.
+   * The sieves of the feasible blocks, the set of feasibles and the queue
+   * are kept across the calls: only the blocks that have become feasible
+   * since the last call, typically through {@code importPMCs}, are sieved
+   * and queued, and a suspended search continues from its queue.
+   * The loop sweeps all the feasibles again when the queue is exhausted
+   * and the feasibles have increased since the last sweep.
+   * @param budget the number of ticks allowed
+   */
   public void improve(int budget) {
     if (whole.width <= k) {
       return;
     }
     
     this.budget = budget;
+    suspended = false;
     
     nTicks = 0;
 
-    feasiblesSieve = new SubblockSieve[g.n];
-    for (int v = 0; v < g.n; v++) {
-      feasiblesSieve[v] = new SubblockSieve(g, k + 1);
+    if (parallelism > 1) {
+      startParallel();
     }
-    for (Block block: blockMap.values()) {
-      block.sieved = false;
+
+    if (feasiblesSieve == null) {
+      feasiblesSieve = new SubblockSieve[g.n];
+      for (int v = 0; v < g.n; v++) {
+        feasiblesSieve[v] = new SubblockSieve(g, k + 1, parallelism > 1);
+      }
+      feasibles = newFeasibleSet();
+      // all the feasibles are in the first sweep
+      nsf = enterNewFeasibles();
+    }
+    else {
+      enterNewFeasibles();
     }
     
-    collectFeasibles();
-
-    nsf = feasibles.size();
-    XBitSet[] fa = feasibles.toArray(new XBitSet[feasibles.size()]);
-    Arrays.sort(fa);
-
-    queue.clear();
+    if (parallelism > 1) {
+      loopParallel();
+    }
+    else {
+      loop();
+    }
+  }
+  
+  /**
+   * Enters the feasible blocks not yet sieved, in the order of
+   * their vertex sets
+   * @return the number of blocks entered
+   */
+  int enterNewFeasibles() {
+    ArrayList<Block> newFeasibles = new ArrayList<>();
     for (Block block: blockMap.values()) {
-      block.queued = false;
+      if (!block.sieved && block.width > 0 && block.width <= k) {
+        newFeasibles.add(block);
+      }
     }
-
-    for (XBitSet feasible: fa) {
-      Block block = makeBlock(feasible);
+    newFeasibles.sort((b1, b2) -> b1.vertices.compareTo(b2.vertices));
+    for (Block block: newFeasibles) {
       block.enter();
     }
-    
-    loop();
-
+    return newFeasibles.size();
   }
   
   public void resume(int budget) {
     this.budget = budget;
     suspended = false;
-    loop();
+    if (parallelism > 1) {
+      startParallel();
+      loopParallel();
+    }
+    else {
+      loop();
+    }
   }
   
 
@@ -189,6 +318,12 @@ static boolean VERIFY = true;
       if (feasibles.contains(g.all)) {
         break;
       }
+      if (deadline.isExpired()) {
+        // the search from the block may have been cut short
+        queue.add(block);
+        suspended = true;
+        return;
+      }
       if (queue.isEmpty()) {
         collectFeasibles();
         int nsf1 = feasibles.size();
@@ -224,8 +359,154 @@ static boolean VERIFY = true;
     
   }
 
+  /**
+   * The parallel counterpart of {@code loop}.
+   * Each block entered into the queue comes with a search task
+   * submitted to the pool, which searches from the first block in the
+   * queue at the time the task runs, so that the blocks are searched
+   * in the order of the queue as far as the threads allow.
+   * Once the budget is exhausted, the deadline expires or the whole
+   * graph is found feasible, the tasks still to run leave the queue 
+   * as it is, to be resumed or discarded.
+   * The queue is refilled at the end of each sweep, when all the 
+   * searches have finished, as in the sequential loop.
+   */
+  void loopParallel() {
+    try {
+      while (true) {
+        awaitSearches();
+        if (halted) {
+          if (wholeReached || feasibles.contains(g.all)) {
+            break;
+          }
+          suspended = true;
+          return;
+        }
+        collectFeasibles();
+        int nsf1 = feasibles.size();
+        if (nsf1 == nsf) {
+          break;
+        }
+        nsf = nsf1;
+        XBitSet[] fa = feasibles.toArray(new XBitSet[feasibles.size()]);
+        Arrays.sort(fa);
+
+        for (Block b: blockMap.values()) {
+          b.queued = false;
+        }
+        for (XBitSet feasible: fa) {
+          Block b = makeBlock(feasible);
+          b.enter();
+        }
+      }
+    } finally {
+      executor = null;
+    }
+    btDP();
+    if (TRACE) {
+      System.out.println("width " + whole.width + " " + nTicks + " ticks");
+    }
+  }
+
+  /**
+   * Starts the parallel search with the tasks for the blocks left
+   * in the queue by the previous call
+   */
+  void startParallel() {
+    halted = false;
+    wholeReached = false;
+    failure = null;
+    executor = WorkerPools.pool(Kind.SEARCH, parallelism);
+    for (int i = queue.size(); i > 0; i--) {
+      submitSearch();
+    }
+  }
+
+  void submitSearch() {
+    pending.incrementAndGet();
+    executor.execute(this::searchNext);
+  }
+
+  /**
+   * The search task: searches from the first block in the queue, 
+   * unless the search is halted
+   */
+  void searchNext() {
+    try {
+      if (halted) {
+        return;
+      }
+      Block block = queue.poll();
+      if (block == null) {
+        return;
+      }
+      if (block.equals(whole)) {
+        wholeReached = true;
+        halted = true;
+        return;
+      }
+      block.search();
+      if (deadline.isExpired()) {
+        // the search from the block may have been cut short
+        queue.add(block);
+        halted = true;
+      }
+      if (feasibles.contains(g.all) || nTicks > budget) {
+        halted = true;
+      }
+    } catch (Throwable e) {
+      failure = e;
+      halted = true;
+    } finally {
+      if (pending.decrementAndGet() == 0) {
+        synchronized (pending) {
+          pending.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the searches submitted to finish.  An interrupt halts 
+   * the search and is re-asserted once they have finished.
+   * The failure of a search is rethrown as it is, if unchecked
+   */
+  void awaitSearches() {
+    boolean interrupted = false;
+    synchronized (pending) {
+      while (pending.get() > 0) {
+        try {
+          pending.wait();
+        } catch (InterruptedException e) {
+          halted = true;
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    Throwable cause = failure;
+    if (cause != null) {
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  Set<XBitSet> newFeasibleSet() {
+    if (parallelism > 1) {
+      return ConcurrentHashMap.newKeySet();
+    }
+    return new HashSet<>();
+  }
+
   void collectFeasibles() {
-    feasibles = new HashSet<>();
+    feasibles = newFeasibleSet();
     for (Block block: blockMap.values()) {
       if (block.width > 0 && block.width <= k) {
         feasibles.add(block.vertices);
@@ -276,15 +557,14 @@ static boolean VERIFY = true;
   }
   
   void finishBySemiPID() {
-    SemiPID spid = new SemiPID(g, k, false);
+    SemiPID spid = new SemiPID(g, k, false, deadline);
     if (spid.isFeasible()) {
 //      Set<XBitSet> pmcs = spid.conducives(N_CONDUCIVES);
       TreeDecomposition td = spid.getTD();
       td = MinimalizeTD.minimalize(td);
       Set<XBitSet> pmcs = td.setOfBags();
-      blockMap = new HashMap<>();
-      pmcMap = new HashMap<>();
-      queue = new PriorityQueue<>();
+      newMaps();
+      feasiblesSieve = null;
       whole = makeBlock(g.all);
       importPMCs(pmcs);
       btDP();
@@ -388,23 +668,48 @@ static boolean VERIFY = true;
   }
 
   boolean isSmall2(XBitSet compo, XBitSet sep) {
-    return compo.cardinality() * 2 + sep.cardinality() <= g.n;
+    return isSmall2(compo.cardinality(), sep.cardinality());
+  }
+
+  boolean isSmall2(int compoSize, int sepSize) {
+    return compoSize * 2 + sepSize <= g.n;
   }
 
   PMC makePMC(XBitSet separator) {
+    if (!wordKeys) {
+      separator = pool.intern(separator);
+    }
     PMC p = pmcMap.get(separator);
     if (p == null) {
+      separator = pool.intern(separator);
       p = new PMC(separator);
-      pmcMap.put(separator, p);
+      PMC p1 = pmcMap.putIfAbsent(separator, p);
+      if (p1 != null) {
+        // created by another thread in the meantime
+        return p1;
+      }
+      p.toCap.addCap(p);
+      for (Block block: p.iBlocks) {
+        block.addUser(p);
+      }
+      newPMCs.add(p);
     }
     return p;
   }
   
   Block makeBlock(XBitSet component)  {
+    if (!wordKeys) {
+      component = pool.intern(component);
+    }
     Block f = blockMap.get(component);
     if (f == null) {
+      component = pool.intern(component);
       f = new Block(component);
-      blockMap.put(component, f);
+      Block f1 = blockMap.putIfAbsent(component, f);
+      if (f1 != null) {
+        // created by another thread in the meantime
+        return f1;
+      }
     }
     return f;
   }
@@ -413,8 +718,10 @@ static boolean VERIFY = true;
     
     XBitSet vertices;
     XBitSet separator;
-    int width;
-    Set<PMC> caps;
+    volatile int width;
+    volatile Set<PMC> caps;
+    // the PMCs having this block as an inner block
+    ArrayList<PMC> users = new ArrayList<>();
     boolean queued;
     boolean sieved;
     int trial;
@@ -425,7 +732,7 @@ static boolean VERIFY = true;
 
     Block(XBitSet vertices, XBitSet separator) {
       this.vertices = vertices;
-      this.separator = separator;
+      this.separator = pool.intern(separator);
       width = vertices.cardinality() + separator.cardinality() - 1;
     }
    
@@ -446,16 +753,51 @@ static boolean VERIFY = true;
     }
 
     void enter() {
-      if (!sieved) {
-        sieved = true;
+      if (markSieved()) {
         int v0 = vertices.nextSetBit(0);
         feasibles.add(vertices);
         feasiblesSieve[v0].add(vertices, separator);
       }
-      if (!queued) {
-        queued = true;
+      if (markQueued()) {
         queue.add(this);
+        if (executor != null) {
+          submitSearch();
+        }
+      }
+    }
+
+    synchronized boolean markSieved() {
+      if (sieved) {
+        return false;
       }
+      sieved = true;
+      return true;
+    }
+
+    synchronized boolean markQueued() {
+      if (queued) {
+        return false;
+      }
+      queued = true;
+      return true;
+    }
+
+    /**
+     * Lowers the width to the given value if it is smaller,
+     * atomically with respect to the other threads lowering it
+     */
+    void lowerWidth(int w) {
+      int w0;
+      while (w < (w0 = width)) {
+        if (WIDTH.compareAndSet(this, w0, w)) {
+          lowered.add(this);
+          return;
+        }
+      }
+    }
+
+    synchronized void addUser(PMC p) {
+      users.add(p);
     }
     
     void search() {
@@ -494,22 +836,32 @@ static boolean VERIFY = true;
           System.out.println("  " + c);
         }
       }
-      nTicks++;
+      N_TICKS.incrementAndGet(PIDIterative.this);
       //      if (nTicks > budget) {
       //        return;
       //      }
+      if (deadline.isExpired()) {
+        return;
+      }
       assert sep.cardinality() <= k + 1;
 
+      VertexSet[] adj = g.adjacency();
+      VertexSet scopeW = new VertexSet(g.n, scope);
+      VertexSet sepW = new VertexSet(g.n, sep);
+      VertexSet union = new VertexSet(g.n);
       if (sep.cardinality() <= k + 1) {
-        for (int w: sep.toArray()) {
-          XBitSet nb = scope.intersectWith(g.neighborSet[w]);
-          XBitSet union = sep.unionWith(nb);
+        for (int w = sep.nextSetBit(0); w >= 0; w = sep.nextSetBit(w + 1)) {
+          scopeW.intersectWith(adj[w], union);
+          if (testing) {
+            System.out.print(union + " added ");
+          }
+          union.or(sepW);
           if (testing) {
-            System.out.println(nb + " added " + union);
+            System.out.println(union);
           }
 
           if (g.isPMC(union)) {
-            PMC p = makePMC(union);
+            PMC p = makePMC(union.toXBitSet());
             p.evaluate();
             if (p.toCap.width <= k) {
               p.toCap.enter();
@@ -525,8 +877,11 @@ static boolean VERIFY = true;
         }
       }
       
+      VertexSet candW = new VertexSet(g.n);
+      VertexSet candSep = new VertexSet(g.n);
+      VertexSet rest = new VertexSet(g.n);
       for (int v0 = scope.nextSetBit(vMin); v0 >= 0; v0 = scope.nextSetBit(v0 + 1)) {
-        ArrayList<XBitSet> candidates = feasiblesSieve[v0].get(scope, sep);
+        ArrayList<XBitSet> candidates = feasiblesSieve[v0].get(scopeW, sepW);
         if (TRACE_SEARCH) {
           System.out.println(candidates.size() + " candidates");
         }
@@ -538,36 +893,44 @@ static boolean VERIFY = true;
         }
         for (XBitSet cand: candidates) {
           assert cand.isSubset(scope);
-          XBitSet candSep = g.neighborSet(cand);
-          XBitSet rest = scope.subtract(cand).subtract(candSep);
-          XBitSet unionSep = sep.unionWith(candSep);
-          assert unionSep.cardinality() <= k + 1;
-          tryUnion(rest, unionSep, v0);
+          candW.copyFrom(cand);
+          g.neighborSet(candW, candSep);
+          scopeW.subtract(candW, rest).andNot(candSep);
+          sepW.unionWith(candSep, union);
+          assert union.cardinality() <= k + 1;
+          tryUnion(rest, union, v0);
         }
       }
 
 
     }
 
-    void tryUnion(XBitSet rest, XBitSet unionSep, int vMin) {
+    /**
+     * {@code rest} and {@code unionSep} are scratch sets of the caller
+     * and are not referred to after the recursive searches start
+     */
+    void tryUnion(VertexSet rest, VertexSet unionSep, int vMin) {
       if (TRACE_SEARCH) {
         System.out.println("tryUnion " + vMin + " unionSep " + unionSep + " rest " + rest);
       }
-      ArrayList<XBitSet> components = g.componentsOf(rest);
+      ComponentScanner scanner = ComponentScanner.get();
+      int nc = scanner.scan(g, rest, rest);
+      int nSep = unionSep.cardinality();
       ArrayList<XBitSet> fulls = new ArrayList<>();
       XBitSet largeFull = null;
-      for (XBitSet compo: components) {
-        if (g.neighborSet(compo).equals(unionSep)) {
-          fulls.add(compo);
-          if (!isSmall2(compo, g.neighborSet(compo))) {
-            largeFull = compo;
+      for (int i = 0; i < nc; i++) {
+        if (scanner.neighborhoodEquals(i, unionSep)) {
+          XBitSet full = scanner.component(i);
+          fulls.add(full);
+          if (!isSmall2(scanner.componentSize(i), nSep)) {
+            largeFull = full;
           }
         }
       }
 
       if (fulls.isEmpty()) {
         if (g.isPMC(unionSep)) {
-          PMC p = makePMC(unionSep);
+          PMC p = makePMC(unionSep.toXBitSet());
           if (TRACE_PMC) {
             System.out.println("pmc created " + p);
           }
@@ -604,9 +967,10 @@ static boolean VERIFY = true;
         return;
       }
 
+      XBitSet sep = unionSep.toXBitSet();
       for (XBitSet full: fulls) {
         if (largeFull == null || full == largeFull)
-          search(full, unionSep, vMin + 1);
+          search(full, sep, vMin + 1);
       }
     }
 
@@ -625,12 +989,17 @@ static boolean VERIFY = true;
       return new LocalGraph(g, vertices.unionWith(separator));
     }
 
-    void addCap(PMC cap) {
+    synchronized void addCap(PMC cap) {
       if (TRACE_PMC) {
         System.out.println("adding cap " + cap.separator + " to " + this);
       }
       if (caps == null) {
-        caps = new HashSet<>();
+        if (parallelism > 1) {
+          caps = ConcurrentHashMap.newKeySet();
+        }
+        else {
+          caps = new HashSet<>();
+        }
       }
       caps.add(cap);
     }
@@ -777,8 +1146,6 @@ static boolean VERIFY = true;
       if (TRACE_PMC) {
         System.out.println("  toCap " + toCap);
       }
-
-      toCap.addCap(this);
     }
 
     XBitSet smallInner() {
@@ -818,10 +1185,7 @@ static boolean VERIFY = true;
     }
 
     void evaluate() {
-      int w = width();
-      if (w < toCap.width) {
-        toCap.width = w;
-      }
+      toCap.lowerWidth(width());
     }
     
     int width() {
@@ -832,9 +1196,7 @@ static boolean VERIFY = true;
           width = block.width;
         }
       }
-      if (width < toCap.width) {
-        toCap.width = width;
-      }
+      toCap.lowerWidth(width);
       return width;
     }
 
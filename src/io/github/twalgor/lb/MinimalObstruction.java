@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.Set;
 
 import io.github.twalgor.acsd.ACSDecomposition;
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.DeadlineExceededException;
 import io.github.twalgor.common.Edge;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
@@ -21,6 +23,7 @@ public class MinimalObstruction {
 //  static boolean TRACE = true;
   Graph g;
   int k;
+  Deadline deadline = Deadline.NONE;
   
   public MinimalObstruction(Graph g, int k) {
     this.g = g;
@@ -28,6 +31,17 @@ public class MinimalObstruction {
     assert !isFeasible(g, k); // tw(g) is k + 1 or larger
   }
   
+  public MinimalObstruction(Graph g, int k, Deadline deadline) {
+    this(g, k);
+    this.deadline = deadline;
+  }
+  
+  /**
+   * Contracts the graph into a minimal minor of treewidth larger than k.
+   * If the deadline expires, the minor contracted so far is returned, 
+   * which is of treewidth larger than k but may not be minimal
+   * @return the minor
+   */
   public Minor minimal() {
     ArrayList<Edge> available = g.edgeList();
     sortAvailable(available, g);
@@ -35,75 +49,80 @@ public class MinimalObstruction {
     Minor minor = new Minor(g);
     Graph h = g;
     boolean moving = true;
-    while (moving) {
-      assert !isFeasible(h, k);
-      if (TRACE) {
-        System.out.println("h.n " + h.n);
-      }
-      if (h.isClique(h.all)) {
-        break;
-      }
-      moving = false;
-      ACSDecomposition acsd = new ACSDecomposition(h);
-      acsd.decomposeByACS();
-      if (acsd.acAtoms.size() > 1) {
+    try {
+      while (moving) {
+        assert !isFeasible(h, k);
         if (TRACE) {
-          System.out.println("acsd of " + acsd.acAtoms.size() + " atoms for h.n " + h.n);
-        }
-        XBitSet[] aa = acsd.acAtoms.toArray(new XBitSet[acsd.acAtoms.size()]);
-        Arrays.sort(aa, (a1, a2) -> - XBitSet.cardinalityComparator.compare(a1,  a2));
-        LocalGraph lg = null;
-        for (XBitSet atom: aa) {
-          LocalGraph lg1 = new LocalGraph(h, atom);
-          if (!isFeasible(lg1.h, k)) {
-            lg = lg1;
-            break;
-          }
-        }
-        assert lg != null;
-        XBitSet[] components = new XBitSet[lg.h.n];
-        for (int v = 0; v < components.length; v++) {
-          components[v] = new XBitSet(new int[] {lg.inv[v]});
+          System.out.println("h.n " + h.n);
         }
-        ArrayList<XBitSet> compos = h.separatedComponents(lg.h.all.convert(lg.inv));
-        for (XBitSet compo: compos) {
-          XBitSet sep = h.neighborSet(compo);
-          int w = extraVertex(sep, h);
-          assert w >= 0;
-          int v = lg.conv[w];
-          components[v].or(compo);
-        }
-        Minor minor1 = new Minor(h, components);
-        minor = minor1.composeWith(minor);
-        if (TRACE) {
-          System.out.println(h.n + " -> " + minor.m + " by ACSD");
+        if (h.isClique(h.all)) {
+          break;
         }
-        h = minor.getGraph();
-        moving = true;
-        assert !isFeasible(h, k);
-        available = inheritAvailable(available, minor1, null);
-        continue;
-      }
-      Set<Edge> rejected = new HashSet<>();
-      for (Edge e: available.toArray(new Edge[available.size()])) {
-        available.remove(e);
-        Minor minor1 = minor.contract(e.u, e.v);
-        Graph h1 = minor1.getGraph();
-        if (!isFeasible(h1, k)) {
+        moving = false;
+        ACSDecomposition acsd = new ACSDecomposition(h);
+        acsd.decomposeByACS();
+        if (acsd.acAtoms.size() > 1) {
           if (TRACE) {
-            System.out.println("e: " + e);
+            System.out.println("acsd of " + acsd.acAtoms.size() + " atoms for h.n " + h.n);
+          }
+          XBitSet[] aa = acsd.acAtoms.toArray(new XBitSet[acsd.acAtoms.size()]);
+          Arrays.sort(aa, (a1, a2) -> - XBitSet.cardinalityComparator.compare(a1,  a2));
+          LocalGraph lg = null;
+          for (XBitSet atom: aa) {
+            LocalGraph lg1 = new LocalGraph(h, atom);
+            if (!isFeasible(lg1.h, k)) {
+              lg = lg1;
+              break;
+            }
           }
-          Minor iMinor = minor1.rebase(minor);
-          available = inheritAvailable(available, iMinor, rejected);
-          minor = minor1;
-          h = h1;
+          assert lg != null;
+          XBitSet[] components = new XBitSet[lg.h.n];
+          for (int v = 0; v < components.length; v++) {
+            components[v] = new XBitSet(new int[] {lg.inv[v]});
+          }
+          ArrayList<XBitSet> compos = h.separatedComponents(lg.h.all.convert(lg.inv));
+          for (XBitSet compo: compos) {
+            XBitSet sep = h.neighborSet(compo);
+            int w = extraVertex(sep, h);
+            assert w >= 0;
+            int v = lg.conv[w];
+            components[v].or(compo);
+          }
+          Minor minor1 = new Minor(h, components);
+          minor = minor1.composeWith(minor);
+          if (TRACE) {
+            System.out.println(h.n + " -> " + minor.m + " by ACSD");
+          }
+          h = minor.getGraph();
           moving = true;
-          break;
+          assert !isFeasible(h, k);
+          available = inheritAvailable(available, minor1, null);
+          continue;
         }
-        else {
-          rejected.add(e);
+        Set<Edge> rejected = new HashSet<>();
+        for (Edge e: available.toArray(new Edge[available.size()])) {
+          available.remove(e);
+          Minor minor1 = minor.contract(e.u, e.v);
+          Graph h1 = minor1.getGraph();
+          if (!isFeasible(h1, k)) {
+            if (TRACE) {
+              System.out.println("e: " + e);
+            }
+            Minor iMinor = minor1.rebase(minor);
+            available = inheritAvailable(available, iMinor, rejected);
+            minor = minor1;
+            h = h1;
+            moving = true;
+            break;
+          }
+          else {
+            rejected.add(e);
+          }
         }
       }
+    } catch (DeadlineExceededException e) {
+      // minor is replaced only when the contracted minor is found
+      // infeasible, and hence is an obstruction
     }
     return minor;
   }
@@ -142,7 +161,7 @@ public class MinimalObstruction {
   }
 
   boolean isFeasible(Graph h, int k) {
-    SemiPID spid = new SemiPID(h, k, false);
+    SemiPID spid = new SemiPID(h, k, false, deadline);
     return spid.isFeasible();
   }
 
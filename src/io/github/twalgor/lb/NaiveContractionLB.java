@@ -4,17 +4,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
 
 import io.github.twalgor.acsd.ACSDecomposition;
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.DeadlineExceededException;
 import io.github.twalgor.common.Edge;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.NeighborFill;
 import io.github.twalgor.common.XBitSet;
 import io.github.twalgor.decomposer.SemiPID;
 import io.github.twalgor.log.Log;
@@ -31,6 +33,11 @@ static final boolean TRACE = false;
   public int lb;
   public Minor obs;
   public boolean exact;
+  Deadline deadline = Deadline.NONE;
+  // the minors obtained by the contractions, indexed by the number of
+  // vertices, from the graph itself down to the smallest, of nSmallest
+  Minor[] minors;
+  int nSmallest;
   
   Random random;
   
@@ -45,50 +52,124 @@ static final boolean TRACE = false;
     allEdges = g.edgeArray();
   }
   
+  public NaiveContractionLB(Graph g, Deadline deadline) {
+    this(g);
+    this.deadline = deadline;
+  }
+  
+  /**
+   * Computes the lower bound and its obstruction, by {@code contract}
+   * followed by {@code raise}.
+   * If the deadline expires after the treewidth of the smallest minor 
+   * is determined, the bound raised so far is kept, with its
+   * obstruction not minimalized
+   * @throws DeadlineExceededException if the deadline expires before
+   */
   public void lowerBound() {
-    Set<Edge> availables = new HashSet<>(g.edgeList());
-    Minor[] minor = new Minor[g.n + 1];
-    minor[g.n] = new Minor(g);
+    contract();
+    raise();
+  }
+
+  /**
+   * Contracts the graph greedily down to a minor with at most twice as
+   * many vertices as its minimum degree, and takes the largest minimum
+   * degree of the minors on the way as the lower bound, with that minor
+   * as the obstruction.  No search is involved, so that the bound 
+   * is available early
+   * @throws DeadlineExceededException if the deadline expires
+   */
+  public void contract() {
+    minors = new Minor[g.n + 1];
+    minors[g.n] = new Minor(g);
     Graph h = g;
+    lb = h.minDegree();
+    obs = minors[g.n];
+    NeighborFill fill = new NeighborFill(g);
     int n = g.n;
     while (n > h.minDegree() * 2) {
-      Edge e = bestCont(availables, minor[n]);
-      minor[n - 1] = minor[n].contract(minor[n].map[e.u], minor[n].map[e.v]);
-      availables = filterEdges(availables, minor[n - 1]);
-      h = minor[n - 1].getGraph();
+      deadline.check();
+      Edge e = bestCont(h, fill);
+      minors[n - 1] = minors[n].contract(e.u, e.v);
+      h = minors[n - 1].getGraph();
+      // from the vertices of the graph contracted to those of h
+      int[] map = new int[n];
+      for (int v = 0; v < n; v++) {
+        map[v] = minors[n - 1].map[minors[n].invMap[v]];
+      }
+      fill = new NeighborFill(h, fill, map);
       n--;
+      if (h.minDegree() > lb) {
+        lb = h.minDegree();
+        obs = minors[n];
+      }
     }
+    nSmallest = n;
+  }
 
-    lb = widthOf(h);
+  /**
+   * Raises the lower bound of {@code contract} by the treewidth of the 
+   * smallest minor and of the larger minors in turn, as long as 
+   * their minimal separators are few, and minimalizes the obstruction.
+   * If the deadline expires after the treewidth of the smallest minor 
+   * is determined, the bound raised so far is kept, with its
+   * obstruction not minimalized
+   * @throws DeadlineExceededException if the deadline expires before,
+   * in which case the bound of {@code contract} is kept
+   */
+  public void raise() {
+    int n = nSmallest;
+    Graph h = minors[n].getGraph();
+    int k = SemiPID.decompose(h, false, deadline).width;
     
     if (TRACE) {
-      System.out.println("initial lb " + lb + " minor.m " + n);
+      System.out.println("initial lb " + k + " minor.m " + n);
     }
     
-    while (n < g.n) {
-      n++;
-      h = minor[n].getGraph();
-      Set<XBitSet> minSeps = minSeps(h, lb);
-      if (minSeps.size() > BUDGET_LB) {
-        break;
-      }
-      while (!isFeasible(h, lb, minSeps)) {
-        lb++;
-        if (TRACE) {
-          System.out.println("raised lb " + lb + " minor.m " + n);
-        }
-        minSeps = minSeps(h, lb);
+    try {
+      while (n < g.n) {
+        n++;
+        h = minors[n].getGraph();
+        Set<XBitSet> minSeps = minSeps(h, k);
         if (minSeps.size() > BUDGET_LB) {
           break;
         }
+        while (!isFeasible(h, k, minSeps, deadline)) {
+          k++;
+          if (TRACE) {
+            System.out.println("raised lb " + k + " minor.m " + n);
+          }
+          minSeps = minSeps(h, k);
+          if (minSeps.size() > BUDGET_LB) {
+            break;
+          }
+        }
       }
+    } catch (DeadlineExceededException e) {
+      // minors[n] has the smaller minors, for which k has been
+      // established, as its minors
+      if (k > lb) {
+        lb = k;
+        obs = minors[n];
+      }
+      return;
     }
-    MinimalObstruction mo = new MinimalObstruction(h, lb -1);
-    obs = mo.minimal().composeWith(minor[n]);
+    if (k >= lb) {
+      lb = k;
+      obs = minors[n];
+      MinimalObstruction mo = new MinimalObstruction(h, k - 1, deadline);
+      obs = mo.minimal().composeWith(minors[n]);
+    }
+    minors = null;
   }
  
+  /**
+   * The minimal separators of at most k vertices, or more than
+   * {@code BUDGET_LB} of them if there are more, in which case 
+   * the generation stops there
+   */
   Set<XBitSet> minSeps(Graph h, int k) {
-    MinSepsGenerator msg = new MinSepsGenerator(h, k);
+    MinSepsGenerator msg = new MinSepsGenerator(h, k, BUDGET_LB);
+    msg.deadline = deadline;
     msg.generate();
     return msg.minSeps;
   }
@@ -96,12 +177,13 @@ static final boolean TRACE = false;
 
   int bestCont(Minor minor, XBitSet candidates) {
     Graph h = minor.getGraph();
+    NeighborFill fill = new NeighborFill(h);
     int iBest = -1;
     EdgeValue valueBest = null;
     for (int i: candidates.toArray()) {
       Edge e = allEdges[i];
       Edge f = convertEdge(e, minor);
-      EdgeValue ev = new EdgeValue(f, h);
+      EdgeValue ev = new EdgeValue(f, fill);
       ev.evaluate();
       if (valueBest == null ||
           ev.compareTo(valueBest) < 0) {
@@ -112,32 +194,27 @@ static final boolean TRACE = false;
     return iBest;
   }
   
-  Edge bestCont(Set<Edge> availables, Minor minor) {
-    Graph h = minor.getGraph();
+  /**
+   * Returns the edge of the graph best to contract, the first in the 
+   * order of the vertices among those of the best value
+   */
+  Edge bestCont(Graph h, NeighborFill fill) {
     Edge best = null;
     EdgeValue valueBest = null;
-    for (Edge e: availables) {
-      Edge f = convertEdge(e, minor);
-      EdgeValue ev = new EdgeValue(f, h);
-      ev.evaluate();
-      if (valueBest == null ||
-          ev.compareTo(valueBest) < 0) {
-        best = e;
-        valueBest = ev;
+    for (int u = 0; u < h.n; u++) {
+      XBitSet nb = h.neighborSet[u];
+      for (int v = nb.nextSetBit(u + 1); v >= 0; v = nb.nextSetBit(v + 1)) {
+        EdgeValue ev = new EdgeValue(new Edge(u, v, h.n), fill);
+        ev.evaluate();
+        if (valueBest == null ||
+            ev.compareTo(valueBest) < 0) {
+          best = ev.edge;
+          valueBest = ev;
+        }
       }
     }
     return best;
   }
-
-  Set<Edge> filterEdges(Set<Edge> edges, Minor minor) {
-    Set<Edge> result = new HashSet<>();
-    for (Edge e: edges) {
-      if (minor.map[e.u] != minor.map[e.v]) {
-        result.add(e);
-      }
-    }
-    return result;
-  }
   
   Edge convertEdge(Edge e, Minor minor) {
     return new Edge(minor.map[e.u], minor.map[e.v], minor.m);
@@ -146,22 +223,22 @@ static final boolean TRACE = false;
 
   class EdgeValue implements Comparable<EdgeValue>{
     Edge edge;
-    Graph h;
+    NeighborFill fill;
     int nMiss1;
     int deg1;
     int nMiss2;
     int deg2;
     
-    EdgeValue(Edge edge, Graph h) {
+    EdgeValue(Edge edge, NeighborFill fill) {
       this.edge = edge;
-      this.h = h;
+      this.fill = fill;
     }
     
     void evaluate() {
-      int du = h.neighborSet[edge.u].cardinality();
-      int dv = h.neighborSet[edge.v].cardinality();
-      int mu = nMissings(edge.u, edge.v, h);
-      int mv = nMissings(edge.v, edge.u, h);
+      int du = fill.degree(edge.u);
+      int dv = fill.degree(edge.v);
+      int mu = fill.nMissings(edge.u, edge.v);
+      int mv = fill.nMissings(edge.v, edge.u);
       if (compare(mu, du, mv, dv) < 0) {
         deg1 = du;
         nMiss1 = mu;
@@ -195,17 +272,6 @@ static final boolean TRACE = false;
         return nMiss1 * deg2 - nMiss2 * deg1; 
       }
     }
-    
-    int nMissings(int u, int v, Graph h) {
-      int count = 0;
-      XBitSet nb = h.neighborSet[u].removeBit(v);
-      for (int w = nb.nextSetBit(0); w >= 0; w = nb.nextSetBit(w + 1)) {
-        count += nb.subtract(h.neighborSet[w]).cardinality()  - 1;
-      }
-      assert count % 2 == 0;
-      return count / 2;
-    }
-
   }
 
   static boolean isFeasible(Graph h, int k) {
@@ -218,7 +284,12 @@ static final boolean TRACE = false;
   }
   
   static boolean isFeasible(Graph h, int k, Set<XBitSet> minSeps) {
-    SemiPID spid = new SemiPID(h, k, minSeps, false);
+    return isFeasible(h, k, minSeps, Deadline.NONE);
+  }
+  
+  static boolean isFeasible(Graph h, int k, Set<XBitSet> minSeps, 
+      Deadline deadline) {
+    SemiPID spid = new SemiPID(h, k, minSeps, false, deadline);
     boolean isFeasible = spid.isFeasible();
     return isFeasible;
   }
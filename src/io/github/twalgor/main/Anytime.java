@@ -0,0 +1,139 @@
+package io.github.twalgor.main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.LocalGraph;
+import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.greedy.MMAF;
+import io.github.twalgor.recursive.BoundListener;
+
+/**
+ * The anytime output of {@code Main}: combines the bounds streamed by
+ * the solvers of the atoms of the safe separator decomposition into
+ * certificates of the whole graph.
+ * The certificate file is rewritten, atomically, each time the width
+ * of the combined decomposition drops or the largest lower bound of
+ * the atoms rises, and a line {@code c ub width millis} or
+ * {@code c lb bound millis} is printed to the standard output,
+ * so that the file always holds the best bounds known so far.
+ * The atoms not yet improved contribute their MMAF triangulations.
+ */
+class Anytime {
+  String name;
+  Graph g;
+  String graphPath;
+  File certFile;
+  TreeDecomposition std;
+  long t0;
+
+  // the fills of the current triangulation of each atom
+  Map<Integer, ArrayList<XBitSet>> fillsMap;
+  // the minors localizing the obstructions of the atoms, computed
+  // once for each atom raising the lower bound
+  Map<Integer, Minor> localizingMap;
+
+  TreeDecomposition td;
+  int lb;
+  Minor obs;
+
+  Anytime(String name, Graph g, String graphPath, File certFile,
+      TreeDecomposition std, long t0) {
+    this.name = name;
+    this.g = g;
+    this.graphPath = graphPath;
+    this.certFile = certFile;
+    this.std = std;
+    this.t0 = t0;
+    fillsMap = new HashMap<>();
+    localizingMap = new HashMap<>();
+    for (int b = 1; b <= std.nb; b++) {
+      LocalGraph lg = new LocalGraph(g, std.bagAt(b));
+      Graph f = lg.h.copy();
+      MMAF mmaf = new MMAF(f);
+      mmaf.triangulate();
+      ArrayList<XBitSet> fills = new ArrayList<>();
+      for (XBitSet clique: new Chordal(f).maximalCliques()) {
+        fills.add(clique.convert(lg.inv));
+      }
+      fillsMap.put(b, fills);
+    }
+    // a single vertex, until an atom raises the lower bound
+    obs = new Minor(g, new XBitSet[] {new XBitSet(new int[] {0})});
+    td = combine();
+    td.validate();
+    write("ub " + td.width);
+  }
+
+  /**
+   * Returns the listener to be set to the solver of the atom
+   * @param b the bag of the atom in the safe separator decomposition
+   * @param lg the local graph of the atom
+   * @return the listener
+   */
+  BoundListener listenerFor(int b, LocalGraph lg) {
+    return new BoundListener() {
+      @Override
+      public void upperBoundImproved(TreeDecomposition atd) {
+        ArrayList<XBitSet> fills = new ArrayList<>();
+        for (XBitSet bag: atd.setOfBags()) {
+          fills.add(bag.convert(lg.inv));
+        }
+        atomImproved(b, fills);
+      }
+
+      @Override
+      public void lowerBoundRaised(int alb, Minor aobs) {
+        atomRaised(b, lg, alb, aobs);
+      }
+    };
+  }
+
+  synchronized void atomImproved(int b, ArrayList<XBitSet> fills) {
+    fillsMap.put(b, fills);
+    TreeDecomposition td1 = combine();
+    if (td1.width < td.width) {
+      td1.validate();
+      td = td1;
+      write("ub " + td.width);
+    }
+  }
+
+  synchronized void atomRaised(int b, LocalGraph lg, int alb, Minor aobs) {
+    if (alb <= lb) {
+      return;
+    }
+    Minor minor0 = localizingMap.get(b);
+    if (minor0 == null) {
+      minor0 = Main.localizingMinor(std, b, lg);
+      localizingMap.put(b, minor0);
+    }
+    lb = alb;
+    obs = aobs.composeWith(minor0);
+    write("lb " + lb);
+  }
+
+  TreeDecomposition combine() {
+    Graph tr = g.copy();
+    for (ArrayList<XBitSet> fills: fillsMap.values()) {
+      for (XBitSet fill: fills) {
+        tr.fill(fill);
+      }
+    }
+    TreeDecomposition td = Chordal.chordalToTD(tr);
+    td.g = g;
+    return td;
+  }
+
+  void write(String event) {
+    long millis = System.currentTimeMillis() - t0;
+    Main.writeCertificate(certFile, name, g, graphPath, td, obs, lb, millis);
+    System.out.println("c " + event + " " + millis);
+  }
+}
@@ -0,0 +1,229 @@
+package io.github.twalgor.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.Graph;
+import io.github.twalgor.main.Main.SolveResult;
+
+/**
+ * Solves all the {@code .gr} files in a directory within one JVM,
+ * so that the JVM startup and the JIT warm-up are paid once per batch
+ * rather than once per instance.
+ * The instances are solved in the order of their file sizes on a pool of
+ * {@code workers} threads, each instance under a wall-clock limit.
+ * The certificates are written as by {@code Main}, and a CSV line
+ * is appended to the summary file as each instance finishes.
+ * An instance not solved within the limit is reported with the status
+ * {@code timeout} and the bounds of its certificate, if the solver has
+ * written one by then, as in the anytime mode.
+ * The peak heap usage is reported only with a single worker, as the
+ * usage of the heap is shared by the instances running concurrently.
+ * Each instance is solved with {@code threads} threads, as given by 
+ * the fourth argument of {@code Main}.
+ * Usage: {@code BatchMain graphDir certDir csvFile [workers [timeLimitSecs 
+ * [threads]]]}
+ */
+public class BatchMain {
+  static final String CSV_HEADER =
+      "name,n,m,width,lb,status,time_ms,peak_heap_mb";
+  // the time allowed after the deadline for the certificate to be written
+  static final long GRACE_MILLIS = 10000;
+
+  String graphPath;
+  String certPath;
+  int workers;
+  int timeLimitSecs;
+  PrintStream csv;
+
+  BatchMain(String graphPath, String certPath, int workers, int timeLimitSecs) {
+    this.graphPath = graphPath;
+    this.certPath = certPath;
+    this.workers = workers;
+    this.timeLimitSecs = timeLimitSecs;
+  }
+
+  void run(String csvPath) throws FileNotFoundException {
+    File[] files = new File(graphPath).listFiles((dir, name) -> name.endsWith(".gr"));
+    if (files == null) {
+      throw new RuntimeException("not a directory: " + graphPath);
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::length));
+
+    csv = new PrintStream(new FileOutputStream(csvPath, false));
+    csv.println(CSV_HEADER);
+    csv.flush();
+
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    for (File file: files) {
+      pool.execute(() -> solveInstance(file));
+    }
+    pool.shutdown();
+    try {
+      while (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+      }
+    } catch (InterruptedException e) {
+      pool.shutdownNow();
+    }
+    csv.close();
+  }
+
+  /**
+   * Solves an instance on a thread of its own under the deadline of 
+   * the time limit, and waits for it at most the time limit and 
+   * a grace period.  A solver that does not stop within the grace period
+   * is cancelled and interrupted; one that does not respond even then
+   * is left running on its daemon thread, and the worker proceeds 
+   * to the next instance.
+   */
+  void solveInstance(File file) {
+    String name = file.getName().substring(0, file.getName().length() - 3);
+    Graph g = Graph.readGraph(file);
+    if (workers == 1) {
+      resetPeakHeap();
+    }
+    long t0 = System.currentTimeMillis();
+
+    Deadline deadline = Deadline.in(timeLimitSecs * 1000L);
+    FutureTask<SolveResult> task = new FutureTask<>(
+        () -> Main.solve(name, g, graphPath, certPath, deadline));
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    thread.start();
+
+    SolveResult result = null;
+    String status;
+    try {
+      if (timeLimitSecs > 0) {
+        result = task.get(timeLimitSecs * 1000L + GRACE_MILLIS, 
+            TimeUnit.MILLISECONDS);
+      }
+      else {
+        result = task.get();
+      }
+      status = result.lb < result.width ? "timeout" : "ok";
+    } catch (TimeoutException e) {
+      deadline.cancel();
+      task.cancel(true);
+      result = readBounds(new File(certPath, name + ".twc"), t0);
+      status = "timeout";
+    } catch (ExecutionException e) {
+      e.getCause().printStackTrace();
+      status = "error";
+    } catch (InterruptedException e) {
+      deadline.cancel();
+      task.cancel(true);
+      status = "interrupted";
+    }
+    long t = System.currentTimeMillis();
+    record(name, g, result, status,
+        result != null ? result.millis : t - t0, 
+        workers == 1 ? Long.toString(peakHeapMB()) : "");
+  }
+
+  /**
+   * Reads the bounds from the certificate written by the solver
+   * @param certFile the certificate file
+   * @param t0 the time the solver started
+   * @return the width and the lower bound of the certificate, with the 
+   * time since {@code t0}; {@code null} if no certificate has been
+   * written since then
+   */
+  static SolveResult readBounds(File certFile, long t0) {
+    // the modification times of some file systems are in seconds
+    if (!certFile.exists() || certFile.lastModified() < t0 / 1000 * 1000) {
+      return null;
+    }
+    SolveResult result = null;
+    try (BufferedReader br = new BufferedReader(new FileReader(certFile))) {
+      String line;
+      while ((line = br.readLine()) != null && line.startsWith("c")) {
+        String[] s = line.split(" ");
+        if (line.startsWith("c width ")) {
+          result = new SolveResult();
+          result.width = Integer.parseInt(s[2]);
+          // no lower bound line if the certificate is exact
+          result.lb = result.width;
+        }
+        else if (line.startsWith("c lower bound ") && result != null) {
+          result.lb = Integer.parseInt(s[3]);
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+    if (result != null) {
+      result.millis = System.currentTimeMillis() - t0;
+    }
+    return result;
+  }
+
+  synchronized void record(String name, Graph g, SolveResult result,
+      String status, long millis, String peakMB) {
+    csv.println(name + "," + g.n + "," + g.numberOfEdges() + "," +
+        (result != null ? result.width : "") + "," +
+        (result != null ? result.lb : "") + "," +
+        status + "," + millis + "," + peakMB);
+    csv.flush();
+  }
+
+  /**
+   * The peak usage of the heap pools is shared by the whole JVM, 
+   * hence reset only with a single worker
+   */
+  static void resetPeakHeap() {
+    for (MemoryPoolMXBean mp: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (mp.getType() == MemoryType.HEAP) {
+        mp.resetPeakUsage();
+      }
+    }
+  }
+
+  static long peakHeapMB() {
+    long peak = 0;
+    for (MemoryPoolMXBean mp: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (mp.getType() == MemoryType.HEAP) {
+        peak += mp.getPeakUsage().getUsed();
+      }
+    }
+    return peak >> 20;
+  }
+
+  public static void main(String[] args) throws FileNotFoundException {
+    if (args.length == 0) {
+      args = new String[] {
+          "..\\instance\\PACE2017bonus_gr",
+          "twcert\\PACE2017bonus_gr",
+          "twcert\\PACE2017bonus_gr.csv"
+      };
+    }
+    assert args.length >= 3;
+    int workers = args.length >= 4 ? Integer.parseInt(args[3]) :
+      Runtime.getRuntime().availableProcessors();
+    int timeLimitSecs = args.length >= 5 ? Integer.parseInt(args[4]) : 0;
+    if (args.length >= 6) {
+      Main.parallelism = Integer.parseInt(args[5]);
+      Main.setSolverParallelism(Main.parallelism);
+    }
+    BatchMain batch = new BatchMain(args[0], args[1], workers, timeLimitSecs);
+    batch.run(args[2]);
+  }
+}
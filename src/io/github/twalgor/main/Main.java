@@ -8,25 +8,75 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Edge;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
+import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.Minor;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
 import io.github.twalgor.common.XBitSet;
 import io.github.twalgor.decomposer.SemiPID;
 import io.github.twalgor.greedy.MMAF;
+import io.github.twalgor.improver.PIDIterative;
+import io.github.twalgor.minseps.MinSepsGenerator;
+import io.github.twalgor.portfolio.Portfolio;
 import io.github.twalgor.recursive.ContractionRecursive;
 import io.github.twalgor.safesep.RootedMinorBoundedDepthBacktrack;
 import io.github.twalgor.safesep.SafeSepDecomposition;
 
 public class Main {
   static final int VERSION = 2;
+
+  /**
+   * the number of threads solving the atoms of the safe separator 
+   * decomposition concurrently, which is also the number of threads
+   * of each parallel part of the solvers, set by 
+   * {@code setSolverParallelism}; 1 for the sequential mode
+   */
+  static int parallelism = 1;
+
+  /**
+   * the wall-clock limit in milliseconds of solving an instance given on 
+   * the command line; 0 for no limit
+   */
+  static long timeLimit = 0;
+
+  /**
+   * if true, the certificate file is rewritten each time a bound 
+   * improves, rather than only at the end
+   */
+  static boolean anytime = false;
+
+  /**
+   * if true, each atom is solved by {@code Portfolio}, racing the exact
+   * engines, rather than by {@code ContractionRecursive} alone
+   */
+  static boolean portfolio = false;
+
+  /**
+   * the time the solver is given on SIGTERM to write the certificate
+   * of the best bounds found
+   */
+  static final long SHUTDOWN_GRACE_MILLIS = 5000;
   
-  private static void solve(String name, String graphPath, String certPath) {
+  /**
+   * The outcome of solving an instance
+   */
+  static class SolveResult {
+    int width;
+    int lb;
+    long millis;
+  }
+
+  private static void solve(String name, String graphPath, String certPath,
+      Deadline deadline) {
     Calendar cl = Calendar.getInstance();
     Date date = new Date();
     
@@ -37,10 +87,37 @@ public class Main {
     File graphFile = new File(graphDir, name + ".gr");
 
     Graph g = Graph.readGraph(graphFile);
+    solve(name, g, graphPath, certPath, deadline);
+  }
+
+  static SolveResult solve(String name, Graph g, String graphPath, 
+      String certPath) {
+    return solve(name, g, graphPath, certPath, Deadline.NONE);
+  }
+
+  /**
+   * Solves the given graph exactly and writes the certificate,
+   * consisting of a tree decomposition and an obstruction minor,
+   * into {@code certPath/name.twc}.
+   * If the deadline expires, the certificate of the best upper and 
+   * lower bounds found by then is written instead, and the width
+   * of the result is larger than its lower bound.
+   * In the anytime mode, the certificate is also written each time
+   * a bound improves, as described in {@code Anytime}
+   * @param name the name of the instance
+   * @param g the graph
+   * @param graphPath the directory of the graph file, for the record
+   * @param certPath the directory of the certificate file
+   * @param deadline the deadline
+   * @return the width and the lower bound certified, with the time taken
+   */
+  static SolveResult solve(String name, Graph g, String graphPath, 
+      String certPath, Deadline deadline) {
     System.out.println(name + " n " + g.n);
 
     long t0 = System.currentTimeMillis();
     SafeSepDecomposition ssd = new SafeSepDecomposition(g);
+    ssd.deadline = deadline;
     TreeDecomposition std = ssd.decomposeSafe();
     
     Integer[] bx = new Integer[std.nb];
@@ -49,37 +126,31 @@ public class Main {
     }
     
     Arrays.sort(bx, (b1, b2) -> -(std.bags[b1].length - std.bags[b2].length));
+
+    File certDir =  new File(certPath);
+    certDir.mkdirs();
+    File certFile =  new File(certDir, name + ".twc");
+
+    Anytime at = null;
+    if (anytime) {
+      at = new Anytime(name, g, graphPath, certFile, std, t0);
+    }
+    AtomSolution[] solutions = solveAtoms(g, std, bx, parallelism, deadline, at);
+
     Graph tr = g.copy();
-    int twMax = 0;
+    int lbMax = 0;
     int bxMax = 0;
     LocalGraph lgMax = null;
-    ContractionRecursive crMax = null;
-    for (int i = 0; i < bx.length; i++) {
-      LocalGraph lg = new LocalGraph(g, std.bagAt(bx[i]));
-      if (i > 0) {
-        Graph f = lg.h.copy();
-        MMAF mmaf = new MMAF(f);
-        mmaf.triangulate();
-        if (mmaf.width <= twMax) {
-          Chordal chordal = new Chordal(f);
-          for (XBitSet clique: chordal.maximalCliques()) {
-            tr.fill(clique.convert(lg.inv));
-          }
-          continue;
-        }
+    Minor obsMax = null;
+    for (AtomSolution as: solutions) {
+      for (XBitSet fill: as.fills) {
+        tr.fill(fill);
       }
-      ContractionRecursive cr = new ContractionRecursive(lg.h);
-      TreeDecomposition td = cr.decompose();
-      for (XBitSet bag: td.setOfBags()) {
-        XBitSet bag1 = bag.convert(lg.inv);
-        assert g.isPMC(bag1);
-        tr.fill(bag1);
-      }
-      if (td.width > twMax) {
-        twMax = td.width;
-        bxMax = bx[i];
-        crMax = cr;
-        lgMax = lg;
+      if (as.obs != null && (obsMax == null || as.lb > lbMax)) {
+        lbMax = as.lb;
+        bxMax = as.b;
+        obsMax = as.obs;
+        lgMax = as.lg;
       }
     }
     
@@ -87,23 +158,50 @@ public class Main {
     td.g = g;
     
     Minor minor0 = localizingMinor(std, bxMax, lgMax);
-    Minor minor = crMax.obs.composeWith(minor0);
+    Minor minor = obsMax.composeWith(minor0);
     long t = System.currentTimeMillis();
     System.out.println("certificates computed " + (t - t0) + " millisecs");
+    if (lbMax < td.width) {
+      System.out.println("deadline exceeded: width " + td.width + 
+          " lower bound " + lbMax);
+    }
     
     td.validate();
     
-    File certDir =  new File(certPath);
-    certDir.mkdirs();
-    
-    File certFile =  new File(certDir, name + ".twc");
-    
+    writeCertificate(certFile, name, g, graphPath, td, minor, lbMax, t - t0);
+
+    SolveResult result = new SolveResult();
+    result.width = td.width;
+    result.lb = lbMax;
+    result.millis = t - t0;
+    return result;
+  }
+
+  /**
+   * Writes the certificate of the given bounds into the file.
+   * The file is replaced atomically, through a temporary file renamed,
+   * so that a reader never sees a partially written certificate
+   * @param certFile the certificate file
+   * @param name the name of the instance
+   * @param g the graph
+   * @param graphPath the directory of the graph file, for the record
+   * @param td the tree decomposition of {@code g}
+   * @param minor the obstruction, a minor of {@code g}
+   * @param lb the lower bound certified by {@code minor}
+   * @param millis the time taken
+   */
+  static void writeCertificate(File certFile, String name, Graph g, 
+      String graphPath, TreeDecomposition td, Minor minor, int lb, long millis) {
+    File tmp = new File(certFile.getPath() + ".tmp");
     try {
-      PrintStream ps = new PrintStream(new FileOutputStream(certFile, false));
+      PrintStream ps = new PrintStream(new FileOutputStream(tmp, false));
       ps.println("c treewidth certificate " + name + 
           " n " + g.n + " m " + g.numberOfEdges() + " graphpath " + graphPath);
       printParams(ps);
-      ps.println("c width " + td.width + " time(ms) " + (t - t0));
+      ps.println("c width " + td.width + " time(ms) " + millis);
+      if (lb < td.width) {
+        ps.println("c lower bound " + lb);
+      }
       ps.println("s nbags " + td.nb);
       for (int b = 1; b <= td.nb; b++) {
         ps.print("b " + b);
@@ -123,11 +221,129 @@ public class Main {
         }
         ps.println();
       }
-      
+      ps.close();
     } catch (FileNotFoundException e) {
       e.printStackTrace();
+      return;
+    }
+    if (!tmp.renameTo(certFile)) {
+      certFile.delete();
+      if (!tmp.renameTo(certFile)) {
+        System.out.println("cannot rename " + tmp + " to " + certFile);
+      }
+    }
+  }
+
+  /**
+   * The solution of an atom of the safe separator decomposition:
+   * the bags of a triangulation of the atom in the vertex numbering of the
+   * whole graph and, if the atom is solved exactly, the width, the 
+   * lower bound, which is smaller if the deadline has expired,
+   * and the obstruction, a minor of the atom certifying the lower bound
+   */
+  static class AtomSolution {
+    int b;
+    LocalGraph lg;
+    ArrayList<XBitSet> fills;
+    int width;
+    int lb;
+    Minor obs;
+  }
+
+  /**
+   * Solves the atoms, the bags of the safe separator decomposition 
+   * {@code std}, in the order given by {@code bx}.  
+   * An atom other than the first is solved exactly only if 
+   * the MMAF heuristic does not already give a width bounded by the
+   * largest exact width found so far.  With {@code parallelism} greater
+   * than one, the atoms other than the first are solved concurrently on 
+   * a fork-join pool, sharing that largest width through an atomic 
+   * integer, once the first, the largest, has been solved, so that they 
+   * are tested against its width.  
+   * @param g the graph
+   * @param std the safe separator decomposition of {@code g}
+   * @param bx the bag indices of the atoms
+   * @param parallelism the number of threads
+   * @param deadline the deadline
+   * @param at the anytime output the atoms report to; null if none
+   * @return the solutions, indexed as {@code bx}
+   */
+  static AtomSolution[] solveAtoms(Graph g, TreeDecomposition std, Integer[] bx,
+      int parallelism, Deadline deadline, Anytime at) {
+    AtomSolution[] solutions = new AtomSolution[bx.length];
+    AtomicInteger twMax = new AtomicInteger();
+    if (parallelism <= 1 || bx.length <= 1) {
+      for (int i = 0; i < bx.length; i++) {
+        solutions[i] = solveAtom(g, std, bx[i], i == 0, twMax, deadline, at);
+      }
+      return solutions;
     }
+    solutions[0] = solveAtom(g, std, bx[0], true, twMax, deadline, at);
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      ArrayList<ForkJoinTask<AtomSolution>> tasks = new ArrayList<>();
+      for (int i = 1; i < bx.length; i++) {
+        int b = bx[i];
+        tasks.add(pool.submit(() -> 
+            solveAtom(g, std, b, false, twMax, deadline, at)));
+      }
+      for (int i = 1; i < bx.length; i++) {
+        solutions[i] = tasks.get(i - 1).join();
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return solutions;
+  }
 
+  static AtomSolution solveAtom(Graph g, TreeDecomposition std, int b,
+      boolean exact, AtomicInteger twMax, Deadline deadline, Anytime at) {
+    AtomSolution as = new AtomSolution();
+    as.b = b;
+    as.lg = new LocalGraph(g, std.bagAt(b));
+    as.fills = new ArrayList<>();
+    LocalGraph lg = as.lg;
+    if (!exact) {
+      Graph f = lg.h.copy();
+      MMAF mmaf = new MMAF(f);
+      mmaf.triangulate();
+      if (mmaf.width <= twMax.get()) {
+        Chordal chordal = new Chordal(f);
+        for (XBitSet clique: chordal.maximalCliques()) {
+          as.fills.add(clique.convert(lg.inv));
+        }
+        return as;
+      }
+    }
+    TreeDecomposition td;
+    if (portfolio) {
+      Portfolio pf = new Portfolio(lg.h, deadline);
+      if (at != null) {
+        pf.listener = at.listenerFor(b, lg);
+      }
+      // the engines other than ContractionRecursive may not give 
+      // minimal triangulations
+      td = MinimalizeTD.minimalize(pf.decompose());
+      as.lb = pf.lowerBound();
+      as.obs = pf.obs();
+    }
+    else {
+      ContractionRecursive cr = new ContractionRecursive(lg.h, deadline);
+      if (at != null) {
+        cr.listener = at.listenerFor(b, lg);
+      }
+      td = cr.decompose();
+      as.lb = cr.lowerBound();
+      as.obs = cr.obs;
+    }
+    for (XBitSet bag: td.setOfBags()) {
+      XBitSet bag1 = bag.convert(lg.inv);
+      assert g.isPMC(bag1);
+      as.fills.add(bag1);
+    }
+    as.width = td.width;
+    twMax.accumulateAndGet(td.width, Math::max);
+    return as;
   }
 
   static void printParams(PrintStream ps) {
@@ -167,6 +383,20 @@ public class Main {
     return new Minor(g, ca);
   }
 
+  /**
+   * Sets the number of threads of the parallel parts of the solvers,
+   * for the instances solved afterwards.  The pools of the threads are
+   * shared by the solvers running concurrently, so that the atoms 
+   * solved at the same time do not multiply the threads of each part
+   * @param parallelism the number of threads; 1 for the sequential solvers
+   */
+  static void setSolverParallelism(int parallelism) {
+    ContractionRecursive.PARALLELISM = parallelism;
+    PIDIterative.PARALLELISM = parallelism;
+    SemiPID.PARALLELISM = parallelism;
+    MinSepsGenerator.PARALLELISM = parallelism;
+  }
+
   static String vaToString(int[] va) {
     StringBuilder sb = new StringBuilder();
     for (int v: va) {
@@ -198,7 +428,32 @@ public class Main {
           "twcert\\PACE2017bonus_gr"
       };
     }
+    ArrayList<String> argList = new ArrayList<>(Arrays.asList(args));
+    anytime = argList.remove("-anytime");
+    portfolio = argList.remove("-portfolio");
+    args = argList.toArray(new String[argList.size()]);
     assert args.length >= 3;
-    solve(args[0], args[1], args[2]);
+    if (args.length >= 4) {
+      parallelism = Integer.parseInt(args[3]);
+      if (parallelism <= 0) {
+        parallelism = Runtime.getRuntime().availableProcessors();
+      }
+    }
+    setSolverParallelism(parallelism);
+    if (args.length >= 5) {
+      timeLimit = Long.parseLong(args[4]) * 1000;
+    }
+    Deadline deadline = Deadline.in(timeLimit);
+    // on SIGTERM, the solver is stopped and given a moment to write
+    // the certificate of the best bounds found
+    Thread mainThread = Thread.currentThread();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      deadline.cancel();
+      try {
+        mainThread.join(SHUTDOWN_GRACE_MILLIS);
+      } catch (InterruptedException e) {
+      }
+    }));
+    solve(args[0], args[1], args[2], deadline);
   }
 }
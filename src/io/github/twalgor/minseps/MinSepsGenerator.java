@@ -5,18 +5,39 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import io.github.twalgor.common.ComponentScanner;
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.WorkerPools;
+import io.github.twalgor.common.WorkerPools.Kind;
 import io.github.twalgor.common.XBitSet;
 
 public class MinSepsGenerator {
 //  static final boolean TRACE = true;
   static boolean TRACE = false;
+  // the number of threads generating, for the instances created 
+  // afterwards; 1 for the sequential generation
+  public static int PARALLELISM = 1;
+  // a subproblem is forked only while the worker has fewer tasks
+  // queued than this
+  static int MAX_SURPLUS = 2;
+
   Graph g;
   int k;
   int maxOnGenerated;
   XBitSet aExcluded;
   public Set<XBitSet> minSeps;
+  // the generation throws DeadlineExceededException once this is expired,
+  // as an incomplete set of separators is of no use
+  public Deadline deadline = Deadline.NONE;
+  int parallelism;
+  ForkJoinPool executor;
+  SeparatorVisitor visitor;
+  volatile boolean stopped;
   
   int aTarget;
   XBitSet aCompoTarget;
@@ -30,6 +51,7 @@ public class MinSepsGenerator {
     this.g = g;
     this.k = k;
     this.maxOnGenerated = maxOnGenerated;
+    parallelism = PARALLELISM;
 //    TRACE = g.n <= 11;
     if (TRACE) {
       System.out.println("MinSepsGenerator n = " + g.n + ", k = " + k + 
@@ -38,7 +60,33 @@ public class MinSepsGenerator {
   }
   
   public void generate() {
-    minSeps = new HashSet<>();
+    generate(null);
+  }
+
+  /**
+   * Generates the minimal separators into {@code minSeps}, streaming
+   * each of them to the visitor, if any, as soon as it is found.
+   * With a parallel generator, the subproblems for the vertices on 
+   * the small side and for the branches are distributed to the workers;
+   * {@code minSeps} is the same set as the sequential one, 
+   * but the visitor receives the separators in another order.
+   * @param visitor the visitor to receive the separators; 
+   * {@code null} for none
+   * @return {@code false} if the visitor stopped the generation,
+   * in which case {@code minSeps} has the separators found so far;
+   * {@code true} otherwise
+   */
+  public boolean generate(SeparatorVisitor visitor) {
+    this.visitor = visitor;
+    stopped = false;
+    if (parallelism > 1) {
+      executor = WorkerPools.pool(Kind.GENERATION, parallelism);
+      minSeps = ConcurrentHashMap.newKeySet();
+    }
+    else {
+      minSeps = new HashSet<>();
+    }
+    ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
     Integer[] vertices = new Integer[g.n];
     for (int i = 0; i < g.n; i++) {
       vertices[i] = i;
@@ -53,50 +101,146 @@ public class MinSepsGenerator {
       bSide.clear(a);
       XBitSet sFixed = g.neighborSet[a].intersectWith(aExcluded);
       if (sFixed.cardinality() > k) {
+        // a separator with a on the side of a later vertex contains
+        // sFixed, so a is excluded without losing any separator 
+        aExcluded.set(a);
         continue;
       }
-      generateFrom(a, aSide, bSide, g.neighborSet[a],  
-          sFixed, aExcluded, "");
-      if (minSeps.size() > maxOnGenerated) {
-        return;
+      if (parallelism > 1) {
+        XBitSet aEx = (XBitSet) aExcluded.clone();
+        tasks.add(executor.submit(() -> generateFrom(a, aSide, bSide, 
+            g.neighborSet[a], sFixed, aEx, "")));
+      }
+      else {
+        generateFrom(a, aSide, bSide, g.neighborSet[a],  
+            sFixed, aExcluded, "");
+        if (minSeps.size() > maxOnGenerated || stopped) {
+          return !stopped;
+        }
       }
       aExcluded.set(a);
     }
+    if (parallelism > 1) {
+      join(tasks);
+      minSeps = new HashSet<>(minSeps);
+    }
+    return !stopped;
+  }
 
+  /**
+   * Waits for the tasks; if one of them fails, the others are
+   * stopped and waited for before its exception is rethrown
+   */
+  void join(ArrayList<ForkJoinTask<?>> tasks) {
+    if (tasks == null) {
+      return;
+    }
+    RuntimeException failure = null;
+    for (ForkJoinTask<?> task: tasks) {
+      try {
+        task.join();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+          stopped = true;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Returns true if the subproblem at hand is to be forked
+   */
+  boolean toFork() {
+    return parallelism > 1 && ForkJoinTask.getPool() == executor &&
+        ForkJoinTask.getSurplusQueuedTaskCount() < MAX_SURPLUS;
+  }
+
+  static ArrayList<ForkJoinTask<?>> fork(Runnable subproblem, 
+      ArrayList<ForkJoinTask<?>> forked) {
+    if (forked == null) {
+      forked = new ArrayList<>();
+    }
+    forked.add(ForkJoinTask.adapt(subproblem).fork());
+    return forked;
+  }
+
+  void found(XBitSet separator) {
+    if (minSeps.add(separator) && visitor != null) {
+      synchronized (this) {
+        if (!stopped && !visitor.visit(separator)) {
+          stopped = true;
+        }
+      }
+    }
   }
 
   void generateFrom(int a, XBitSet aSide, XBitSet rest, XBitSet separator, XBitSet sFixed,
       XBitSet aExcluded, String indent) {
+    deadline.check();
+    if (stopped) {
+      return;
+    }
 
     assert g.neighborSet(aSide).equals(separator);
+    // the scanner results are copied out before branching,
+    // as the recursion scans again
+    ComponentScanner scanner = ComponentScanner.get();
+    int nc = scanner.scanSeparated(g, rest, separator);
     ArrayList<XBitSet> fulls = new ArrayList<>();
     ArrayList<XBitSet> nonFulls = new ArrayList<>();
-    g.listComponents(rest, separator, fulls, nonFulls);
+    ArrayList<XBitSet> nonFullSeps = new ArrayList<>();
+    for (int i = 0; i < nc; i++) {
+      if (scanner.isFull(i, separator)) {
+        fulls.add(scanner.component(i));
+      }
+      else {
+        nonFulls.add(scanner.component(i));
+        nonFullSeps.add(scanner.neighborhood(i));
+      }
+    }
     
+    ArrayList<ForkJoinTask<?>> forked = null;
     for (XBitSet full: fulls) {
       if (TRACE) {
         System.out.println(indent + "full" + full);
       }
-      branch(a, aSide, full, separator, sFixed, aExcluded, indent);
+      if (toFork()) {
+        forked = fork(() -> branch(a, aSide, full, separator, sFixed, 
+            aExcluded, indent), forked);
+      }
+      else {
+        branch(a, aSide, full, separator, sFixed, aExcluded, indent);
+      }
     }
     
-    for (XBitSet bCompo: nonFulls) {
-      XBitSet sep = g.neighborSet(bCompo);
+    for (int j = 0; j < nonFulls.size(); j++) {
+      XBitSet bCompo = nonFulls.get(j);
+      XBitSet sep = nonFullSeps.get(j);
       if (!sFixed.isSubset(sep)) {
         continue;
       }
-      XBitSet rest1 = g.all.subtract(bCompo);
-      rest1.andNot(sep);
-      ArrayList<XBitSet> compos = g.componentsOf(rest1);
-      for (XBitSet c: compos) {
-        if (c.get(a)) {
-          if (!c.intersects(aExcluded)) {
-            branch(a, c, bCompo, sep, sFixed, aExcluded, indent);
-          }
-          break;
+      // only the component containing a of the rest is relevant
+      XBitSet closure = bCompo.unionWith(sep);
+      if (closure.get(a)) {
+        continue;
+      }
+      scanner.scanSeparated(g, XBitSet.singleton(a), closure);
+      if (!scanner.componentIntersects(0, aExcluded)) {
+        XBitSet aCompo = scanner.component(0);
+        if (toFork()) {
+          forked = fork(() -> branch(a, aCompo, bCompo, sep, sFixed, 
+              aExcluded, indent), forked);
+        }
+        else {
+          branch(a, aCompo, bCompo, sep, sFixed, aExcluded, indent);
         }
       }
     }
+    join(forked);
   }
   
   void branch(int a, XBitSet aSide, XBitSet bSide, XBitSet separator, 
@@ -111,7 +255,7 @@ public class MinSepsGenerator {
 
       System.out.println(indent + minSeps.size() + " minSeps so far");
     }
-    if (minSeps.size() > maxOnGenerated) {
+    if (minSeps.size() > maxOnGenerated || stopped) {
       return;
     }
 
@@ -130,7 +274,7 @@ public class MinSepsGenerator {
       if (TRACE) {
         System.out.println(indent + "minSep added: " + separator);
       }
-      minSeps.add(separator);
+      found(separator);
       if (minSeps.size() > maxOnGenerated) {
         return;
       }
@@ -171,13 +315,22 @@ public class MinSepsGenerator {
     if (TRACE) {
       System.out.println(indent + "sFixed1 = " + sFixed1);
     }
+    ArrayList<ForkJoinTask<?>> forked = null;
     if (sFixed1.cardinality() <= k) {
-      generateFrom(a, aSide.addBit(v), rest, 
-        separator1, sFixed1, aExcluded, indent + " ");
+      XBitSet aSide1 = aSide.addBit(v);
+      if (toFork()) {
+        forked = fork(() -> generateFrom(a, aSide1, rest, 
+            separator1, sFixed1, aExcluded, indent + " "), forked);
+      }
+      else {
+        generateFrom(a, aSide1, rest, 
+            separator1, sFixed1, aExcluded, indent + " ");
+      }
     }
     if (sFixed.cardinality() < k) {
       branch(a, aSide, bSide, separator, sFixed.addBit(v), aExcluded, indent + " ");
     }
+    join(forked);
   }
   
   int largestNeighborhoodVertex(XBitSet toDecide, XBitSet bSide) {
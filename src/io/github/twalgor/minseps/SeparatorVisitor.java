@@ -0,0 +1,19 @@
+package io.github.twalgor.minseps;
+
+import io.github.twalgor.common.XBitSet;
+
+/**
+ * A consumer of the minimal separators listed by
+ * {@code MinSepsGenerator}, each received once as soon as it is found.
+ * With a parallel generator, the visitor is called from the worker
+ * threads, but never by two of them at the same time.
+ */
+public interface SeparatorVisitor {
+  /**
+   * Receives a minimal separator found
+   * @param separator the separator, not to be modified
+   * @return {@code true} to continue the generation;
+   * {@code false} to stop it
+   */
+  boolean visit(XBitSet separator);
+}
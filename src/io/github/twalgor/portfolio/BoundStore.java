@@ -0,0 +1,155 @@
+package io.github.twalgor.portfolio;
+
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.recursive.BoundListener;
+
+/**
+ * The best bounds found by the engines of {@code Portfolio}, shared
+ * among them: the narrowest tree decomposition and the largest lower
+ * bound, with the obstruction certifying it, together with the engines
+ * that found them.
+ * Once the bounds meet, the engine whose offer made them meet is
+ * recorded as the winner and the deadline of the engines is cancelled,
+ * to stop the others.
+ * The engines work on their own copies of the graph, as the graph
+ * is not safe for concurrent use; the decompositions and the minors
+ * offered are rebound to the graph of the store.
+ * Safe for concurrent use.
+ */
+public class BoundStore {
+  Graph g;
+  TreeDecomposition td;
+  // the engine that found td; null for the initial decomposition
+  Engine ubEngine;
+  int lb;
+  Minor obs;
+  Engine lbEngine;
+  // the engine whose bound met the other; null while they differ
+  Engine winner;
+  // the deadline of the engines, cancelled when the bounds meet
+  Deadline stop;
+
+  // receives the bounds as they improve, if not null; called with
+  // the store locked, hence never concurrently with itself
+  BoundListener listener;
+
+  /**
+   * Creates the store with the initial decomposition and the lower bound
+   * of a single vertex
+   * @param g the graph, connected
+   * @param td the initial tree decomposition of {@code g}
+   * @param deadline the deadline of the engines, of which the deadline
+   * cancelled when the bounds meet is a child
+   */
+  BoundStore(Graph g, TreeDecomposition td, Deadline deadline) {
+    this.g = g;
+    this.td = td;
+    stop = deadline.newChild();
+    lb = 0;
+    obs = new Minor(g, new XBitSet[] {new XBitSet(new int[] {0})});
+  }
+
+  /**
+   * Takes the decomposition as the best, if narrower than the current
+   * @param td a tree decomposition of a copy of the graph
+   * @param engine the engine that found it
+   * @return {@code true} if taken
+   */
+  public synchronized boolean offerUB(TreeDecomposition td, Engine engine) {
+    if (td == null || td.width >= this.td.width) {
+      return false;
+    }
+    td.g = g;
+    this.td = td;
+    ubEngine = engine;
+    if (listener != null) {
+      listener.upperBoundImproved(td);
+    }
+    checkMet(engine);
+    return true;
+  }
+
+  /**
+   * Takes the lower bound as the best, if larger than the current
+   * @param lb the lower bound
+   * @param obs the obstruction, a minor of a copy of the graph
+   * whose treewidth is at least {@code lb}
+   * @param engine the engine that found it
+   * @return {@code true} if taken
+   */
+  public synchronized boolean offerLB(int lb, Minor obs, Engine engine) {
+    if (lb <= this.lb) {
+      return false;
+    }
+    this.lb = lb;
+    this.obs = new Minor(g, obs.components);
+    lbEngine = engine;
+    if (listener != null) {
+      listener.lowerBoundRaised(lb, this.obs);
+    }
+    checkMet(engine);
+    return true;
+  }
+
+  /**
+   * Takes the lower bound proved by an exact search on the graph itself,
+   * which is then the obstruction, if larger than the current
+   * @param lb the lower bound
+   * @param engine the engine that proved it
+   * @return {@code true} if taken
+   */
+  public synchronized boolean offerLB(int lb, Engine engine) {
+    if (lb <= this.lb) {
+      return false;
+    }
+    return offerLB(lb, new Minor(g), engine);
+  }
+
+  void checkMet(Engine engine) {
+    if (winner == null && lb >= td.width) {
+      assert lb == td.width;
+      winner = engine;
+      stop.cancel();
+    }
+  }
+
+  public synchronized TreeDecomposition td() {
+    return td;
+  }
+
+  public synchronized int ub() {
+    return td.width;
+  }
+
+  public synchronized int lb() {
+    return lb;
+  }
+
+  public synchronized Minor obs() {
+    return obs;
+  }
+
+  public synchronized Engine ubEngine() {
+    return ubEngine;
+  }
+
+  public synchronized Engine lbEngine() {
+    return lbEngine;
+  }
+
+  /**
+   * Returns the engine whose bound met the other
+   * @return the winner; {@code null} if the bounds have not met
+   */
+  public synchronized Engine winner() {
+    return winner;
+  }
+
+  public synchronized boolean isSolved() {
+    return winner != null;
+  }
+}
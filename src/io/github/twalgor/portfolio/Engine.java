@@ -0,0 +1,32 @@
+package io.github.twalgor.portfolio;
+
+/**
+ * The engines raced by {@code Portfolio}
+ */
+public enum Engine {
+  /**
+   * {@code ContractionRecursive}, raising the lower bound by the minors
+   * obtained by contractions as it lowers the upper bound
+   */
+  CONTRACTION_RECURSIVE,
+  /**
+   * {@code SemiPID.decompose}, trying the widths upward from the
+   * lower bound
+   */
+  SEMI_PID,
+  /**
+   * {@code PIDImprover} followed by {@code PIDIterative} for the widths
+   * downward from the upper bound, each decided by {@code finish}
+   */
+  PID_ITERATIVE,
+  /**
+   * {@code PathLikeImproverBT}, the improvement through {@code BTDP},
+   * which gives upper bounds only
+   */
+  BTDP,
+  /**
+   * {@code SemiExact} for the widths downward from the upper bound,
+   * with the minimal separators increased until the answer is exact
+   */
+  SEMI_EXACT
+}
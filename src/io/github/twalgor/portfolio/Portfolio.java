@@ -0,0 +1,322 @@
+package io.github.twalgor.portfolio;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import io.github.twalgor.btdp.PathLikeImproverBT;
+import io.github.twalgor.btdp.Value;
+import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.DeadlineExceededException;
+import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.MinimalizeTD;
+import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.WorkerPools;
+import io.github.twalgor.common.WorkerPools.Kind;
+import io.github.twalgor.common.XBitSet;
+import io.github.twalgor.decomposer.SemiExact;
+import io.github.twalgor.decomposer.SemiPID;
+import io.github.twalgor.greedy.MMAF;
+import io.github.twalgor.improver.PIDImprover;
+import io.github.twalgor.improver.PIDIterative;
+import io.github.twalgor.recursive.BoundListener;
+import io.github.twalgor.recursive.ContractionRecursive;
+
+/**
+ * Solves a graph exactly by racing several engines on it, each on a
+ * thread of its own, as which engine is the fastest depends heavily
+ * on the instance.
+ * The engines share their bounds through a {@code BoundStore}: the
+ * engines going downward from the upper bound start from the best
+ * decomposition found by any of them, and the engine going upward from
+ * the lower bound starts from the best lower bound.
+ * All the engines are stopped as soon as the bounds meet, and the engine
+ * that made them meet is recorded as the winner.
+ */
+public class Portfolio {
+//  static final boolean TRACE = true;
+  static final boolean TRACE = false;
+  // the number of ticks of the improvers between the polls of the store
+  static final int UNIT_BUDGET = 1000;
+
+  // the engines raced, for the instances created afterwards
+  public static EnumSet<Engine> ENGINES = EnumSet.allOf(Engine.class);
+
+  Graph g;
+  Set<Engine> engines;
+  Deadline deadline;
+  public BoundStore store;
+  // receives the bounds as they improve, if not null
+  public BoundListener listener;
+  // the time from the start until the bounds met
+  public long millis;
+
+  /**
+   * Creates the portfolio of the engines in {@code ENGINES}
+   * @param g the graph, connected
+   * @param deadline the deadline
+   */
+  public Portfolio(Graph g, Deadline deadline) {
+    this(g, ENGINES, deadline);
+  }
+
+  /**
+   * Creates the portfolio of the given engines
+   * @param g the graph, connected
+   * @param engines the engines raced
+   * @param deadline the deadline
+   */
+  public Portfolio(Graph g, Set<Engine> engines, Deadline deadline) {
+    assert g.isConnected(g.all);
+    assert !engines.isEmpty();
+    this.g = g;
+    this.engines = EnumSet.copyOf(engines);
+    this.deadline = deadline;
+  }
+
+  /**
+   * Computes an optimal tree decomposition, with the obstruction in
+   * the store.
+   * If the deadline expires, the best decomposition found so far is
+   * returned, with the obstruction for the best lower bound in the store.
+   * The failure of an engine other than by the deadline stops the others
+   * and is thrown once they have stopped
+   * @return the tree decomposition
+   */
+  public TreeDecomposition decompose() {
+    long t0 = System.currentTimeMillis();
+    store = new BoundStore(g, greedyDecomposition(g), deadline);
+    store.listener = listener;
+    if (listener != null) {
+      listener.upperBoundImproved(store.td);
+    }
+
+    ForkJoinPool pool = WorkerPools.pool(Kind.PORTFOLIO, engines.size());
+    ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (Engine engine: engines) {
+      tasks.add(pool.submit(() -> run(engine)));
+    }
+    RuntimeException failure = null;
+    for (ForkJoinTask<?> task: tasks) {
+      try {
+        task.join();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+          store.stop.cancel();
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    millis = System.currentTimeMillis() - t0;
+    if (TRACE) {
+      System.out.println("portfolio n " + g.n + " width " + store.ub() +
+          " lb " + store.lb() + " winner " + store.winner() +
+          ", " + millis + " millisecs");
+    }
+    return store.td();
+  }
+
+  /**
+   * Returns the lower bound certified by the obstruction in the store,
+   * which is the width of the decomposition returned by {@code decompose}
+   * unless the deadline has expired
+   * @return the lower bound
+   */
+  public int lowerBound() {
+    return store.lb();
+  }
+
+  public Minor obs() {
+    return store.obs();
+  }
+
+  /**
+   * Returns the engine that made the bounds meet
+   * @return the winner; {@code null} if the deadline has expired first
+   */
+  public Engine winner() {
+    return store.winner();
+  }
+
+  void run(Engine engine) {
+    if (store.stop.isExpired()) {
+      // started only after the bounds have met
+      return;
+    }
+    Graph h = g.copy();
+    try {
+      switch (engine) {
+      case CONTRACTION_RECURSIVE:
+        runContractionRecursive(h);
+        break;
+      case SEMI_PID:
+        runSemiPID(h);
+        break;
+      case PID_ITERATIVE:
+        runPIDIterative(h);
+        break;
+      case BTDP:
+        runBTDP(h);
+        break;
+      case SEMI_EXACT:
+        runSemiExact(h);
+        break;
+      }
+    } catch (DeadlineExceededException e) {
+    }
+    if (TRACE) {
+      System.out.println(engine + " stopped, ub " + store.ub() +
+          " lb " + store.lb());
+    }
+  }
+
+  void runContractionRecursive(Graph h) {
+    ContractionRecursive cr = new ContractionRecursive(h, store.stop);
+    Engine engine = Engine.CONTRACTION_RECURSIVE;
+    cr.listener = new BoundListener() {
+      @Override
+      public void upperBoundImproved(TreeDecomposition td) {
+        store.offerUB(td, engine);
+      }
+
+      @Override
+      public void lowerBoundRaised(int lb, Minor obs) {
+        store.offerLB(lb, obs, engine);
+      }
+    };
+    TreeDecomposition td = cr.decompose();
+    store.offerUB(td, engine);
+    store.offerLB(cr.lowerBound(), cr.obs, engine);
+  }
+
+  void runSemiPID(Graph h) {
+    Engine engine = Engine.SEMI_PID;
+    TreeDecomposition td = SemiPID.decompose(h, store.lb(), false,
+        store.stop, lb -> store.offerLB(lb, engine));
+    store.offerUB(td, engine);
+    store.offerLB(td.width, engine);
+  }
+
+  void runPIDIterative(Graph h) {
+    Engine engine = Engine.PID_ITERATIVE;
+    PIDImprover pidimp = new PIDImprover(h, bestPMCs(h));
+    pidimp.deadline = store.stop;
+    Value val = pidimp.opt;
+    while (true) {
+      pidimp.improve(UNIT_BUDGET);
+      store.stop.check();
+      if (pidimp.opt.compareTo(val) >= 0) {
+        break;
+      }
+      val = pidimp.opt;
+      store.offerUB(pidimp.getTD(), engine);
+    }
+
+    while (true) {
+      int k = store.ub() - 1;
+      if (k < store.lb()) {
+        return;
+      }
+      PIDIterative pidi = new PIDIterative(h, k);
+      pidi.deadline = store.stop;
+      pidi.importPMCs(pidimp.pmcs());
+      pidi.importPMCs(bestPMCs(h));
+      if (pidi.width() > k) {
+        // a bounded search for a decomposition, as in ContractionRecursive,
+        // before finish decides the width
+        pidi.improve(UNIT_BUDGET);
+        store.stop.check();
+        if (pidi.width() > k) {
+          pidi.finish();
+        }
+      }
+      if (pidi.width() > k) {
+        store.offerLB(k + 1, engine);
+        return;
+      }
+      store.offerUB(pidi.getTD(), engine);
+    }
+  }
+
+  void runBTDP(Graph h) {
+    Engine engine = Engine.BTDP;
+    PathLikeImproverBT plibt = new PathLikeImproverBT(h, bestPMCs(h));
+    int budget = UNIT_BUDGET;
+    while (true) {
+      store.stop.check();
+      if (store.ub() < plibt.value.width) {
+        plibt.importPMCs(bestPMCs(h));
+      }
+      Value val = plibt.value;
+      plibt.improve(budget);
+      if (plibt.value.compareTo(val) < 0) {
+        store.offerUB(plibt.getTD(), engine);
+      }
+      else if (plibt.nTick < budget) {
+        // no block left to search from
+        return;
+      }
+      else {
+        budget *= 2;
+      }
+    }
+  }
+
+  void runSemiExact(Graph h) {
+    Engine engine = Engine.SEMI_EXACT;
+    int nMinSeps = h.n;
+    Set<XBitSet> minSeps = null;
+    while (true) {
+      int k = store.ub() - 1;
+      if (k < store.lb()) {
+        return;
+      }
+      SemiExact se = new SemiExact(h, k, minSeps, nMinSeps);
+      se.deadline = store.stop;
+      if (se.isFeasible()) {
+        store.offerUB(se.getTD(), engine);
+      }
+      else if (se.isExact) {
+        store.offerLB(k + 1, engine);
+        return;
+      }
+      else {
+        nMinSeps *= 2;
+      }
+      minSeps = se.minSeps;
+    }
+  }
+
+  /**
+   * Returns the PMCs of the given copy of the graph in a minimal
+   * triangulation contained in the best decomposition found so far
+   * @param h a copy of the graph
+   * @return the set of PMCs
+   */
+  Set<XBitSet> bestPMCs(Graph h) {
+    TreeDecomposition best = store.td();
+    Graph t = h.copy();
+    for (XBitSet bag: best.setOfBags()) {
+      t.fill(bag);
+    }
+    TreeDecomposition td = Chordal.chordalToTD(t);
+    td.g = h;
+    return MinimalizeTD.minimalize(td).setOfBags();
+  }
+
+  TreeDecomposition greedyDecomposition(Graph h) {
+    Graph h1 = h.copy();
+    MMAF mmaf = new MMAF(h1);
+    mmaf.triangulate();
+    TreeDecomposition td = Chordal.chordalToTD(h1);
+    td.g = h;
+    return td;
+  }
+}
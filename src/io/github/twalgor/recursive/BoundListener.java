@@ -0,0 +1,28 @@
+package io.github.twalgor.recursive;
+
+import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.TreeDecomposition;
+
+/**
+ * A receiver of the bounds of {@code ContractionRecursive} as they
+ * improve, for the anytime use of the solver.
+ * The methods are called on the thread running the solver, which
+ * waits for them to return; with the speculative exploration of the
+ * contraction tree, {@code lowerBoundRaised} may be called on one of
+ * its workers instead, but never concurrently with itself.
+ */
+public interface BoundListener {
+  /**
+   * Receives a decomposition narrower than any received before
+   * @param td the tree decomposition, of the graph being solved
+   */
+  void upperBoundImproved(TreeDecomposition td);
+
+  /**
+   * Receives a lower bound larger than any received before
+   * @param lb the lower bound
+   * @param obs the obstruction, a minor of the graph being solved
+   * whose treewidth is at least {@code lb}
+   */
+  void lowerBoundRaised(int lb, Minor obs);
+}
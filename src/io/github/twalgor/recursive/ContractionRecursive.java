@@ -1,24 +1,34 @@
 package io.github.twalgor.recursive;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import io.github.twalgor.acsd.ACSDecomposition;
 import io.github.twalgor.btdp.Value;
 import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Deadline;
+import io.github.twalgor.common.DeadlineExceededException;
 import io.github.twalgor.common.Edge;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.LocalGraph;
 import io.github.twalgor.common.MinimalizeTD;
 import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.NeighborFill;
 import io.github.twalgor.common.Subgraph;
 import io.github.twalgor.common.TreeDecomposition;
+import io.github.twalgor.common.WorkerPools;
+import io.github.twalgor.common.WorkerPools.Kind;
 import io.github.twalgor.common.XBitSet;
 import io.github.twalgor.decomposer.SemiPID;
 import io.github.twalgor.greedy.MMAF;
@@ -45,12 +55,53 @@ static final boolean STACK_TRACE = false;
   public static final int N_TRY = 1;
   public static final int UNIT_BUDGET_UB = 100;
   public static final int N_CONDUCIVES_RATIO = 10;
+  // the number of children of a node explored at the same time, 
+  // for the instances created afterwards; 1 for the sequential exploration
+  public static int PARALLELISM = 1;
+  // only the nodes shallower than this explore their children
+  // speculatively, the children themselves working sequentially
+  static int SPECULATION_DEPTH = 1;
+
+  // whether the explored children, kept to be inherited from, are 
+  // compacted to their minors and conducive PMCs, for the instances
+  // created afterwards
+  public static boolean COMPACT_CHILDREN = false;
+  // the estimated bytes of the PMCs kept by the compacted children and
+  // the transposition table, beyond which those of the children used
+  // least recently are dropped and the table takes no more; 0 for no limit 
+  public static long SUMMARY_BUDGET = 0;
+  // whether the results of the nodes are kept in a transposition table,
+  // for the minors reached again by other sequences of contractions,
+  // for the instances created afterwards; the PMCs kept count against
+  // SUMMARY_BUDGET
+  public static boolean TRANSPOSITIONS = false;
   
   Graph g;
   public Minor obs;
   Node root;
   int kTarget;
-  int gLB;
+  // raised from the workers exploring children speculatively,
+  // through raiseLB
+  volatile int gLB;
+  int parallelism;
+  Deadline deadline = Deadline.NONE;
+  // the narrowest decomposition before root is made, to return 
+  // if the deadline expires before
+  TreeDecomposition ubTD;
+  
+  // the results of the nodes, for the minors reached again; null if
+  // not kept
+  TranspositionTable transpositions;
+  boolean compactChildren;
+  long summaryBudget;
+  // the compacted children with their PMCs still kept, in the order of 
+  // their last use, to the estimated bytes of the PMCs
+  LinkedHashMap<Node, Long> summaries;
+  long summaryBytes;
+  
+  // receives the bounds as they improve, if not null
+  public BoundListener listener;
+  int lbOffered;
   
   Random random;
   
@@ -60,33 +111,77 @@ static final boolean STACK_TRACE = false;
   public ContractionRecursive(Graph g) {
     this.g = g;
     random = new Random(1);
+    parallelism = PARALLELISM;
+    if (TRANSPOSITIONS) {
+      transpositions = new TranspositionTable();
+    }
+    compactChildren = COMPACT_CHILDREN;
+    summaryBudget = SUMMARY_BUDGET;
+    summaries = new LinkedHashMap<>(16, 0.75f, true);
     
     if (t0 == 0) {
       t0 = System.currentTimeMillis();
     }
   }
   
+  public ContractionRecursive(Graph g, Deadline deadline) {
+    this(g);
+    this.deadline = deadline;
+  }
+  
+  /**
+   * Computes an optimal tree decomposition, together with the obstruction
+   * in {@code obs}.
+   * If the deadline expires, the best decomposition found so far 
+   * is returned, with the obstruction for the best lower bound
+   * @return the tree decomposition
+   */
   public TreeDecomposition decompose() {
-    computeWidth();
+    try {
+      computeWidth();
+    } catch (DeadlineExceededException e) {
+      if (TRACE) {
+        System.out.println("deadline exceeded, lb " + gLB + 
+            (root == null ? "" : ", ub " + root.ub()));
+      }
+      if (root == null) {
+        return ubTD;
+      }
+    }
     return root.aDecomposition();
   }
   
+  /**
+   * Returns the lower bound certified by {@code obs}, which is the width
+   * of the decomposition returned by {@code decompose} unless
+   * the deadline has expired
+   * @return the lower bound
+   */
+  public int lowerBound() {
+    return gLB;
+  }
+  
   void computeWidth() {
-    NaiveContractionLB nclb = new NaiveContractionLB(g);
-    nclb.lowerBound();
-    gLB = nclb.lb;
-    obs = nclb.obs;
-    assert obs != null;
-    if (TRACE) {
-      System.out.println("initial lower bound " + gLB);
-    }
-
     TreeDecomposition td = greedyDecomposition(g);
     if (TRACE_DETAIL) {
       System.out.println("initial upper bound " + td.width);
     }
+    offerUB(td);
+
+    // a single vertex, until the lower bound is computed
+    gLB = 0;
+    obs = new Minor(g, new XBitSet[] {new XBitSet(new int[] {0})});
+
+    // the cheap lower bound of the greedy contractions, before the 
+    // improvement of the upper bound, which may take long
+    NaiveContractionLB nclb = new NaiveContractionLB(g, deadline);
+    nclb.contract();
+    gLB = nclb.lb;
+    obs = nclb.obs;
+    offerLB();
     
     PIDImprover pidimp = new PIDImprover(g, td.setOfBags());
+    pidimp.deadline = deadline;
     Value val = pidimp.opt;
 
     if (TRACE) {
@@ -103,27 +198,173 @@ static final boolean STACK_TRACE = false;
         System.out.println("value improved " + val + " " + 
             pidimp.pmcMap.size() + " pmcs");
       }
+      offerUB(pidimp.getTD());
+    }
+
+    // the exact part of the lower bound is computed after the cheaper 
+    // improvement of the upper bound, which a listener thus receives early
+    try {
+      nclb.raise();
+    } finally {
+      // the bound raised is kept even if the deadline expires
+      gLB = nclb.lb;
+      obs = nclb.obs;
+      offerLB();
+    }
+    assert obs != null;
+    if (TRACE) {
+      System.out.println("initial lower bound " + gLB);
     }
 
     kTarget = val.width - 1;
-    PIDIterative pidi = new PIDIterative(g, kTarget);
+    PIDIterative pidi = newPIDIterative(g, kTarget);
     pidi.importPMCs(pidimp.pmcs());
 
     root = new Node(g, pidi);
+    offerUB(root.aDecomposition());
     
     while (root.ub() > gLB) {
+      deadline.check();
       if (TRACE) {
         System.out.println("target " + kTarget + " lb " + gLB + ", " + 
             (System.currentTimeMillis() - t0) + " millisecs");
       }
       improveUB();
       kTarget = root.ub() - 1;
+      offerUB(root.aDecomposition());
     }
   }
   
+  /**
+   * Takes the decomposition as the best, and passes it to the listener,
+   * if it is narrower than those offered before
+   */
+  void offerUB(TreeDecomposition td) {
+    if (ubTD == null || td.width < ubTD.width) {
+      ubTD = td;
+      if (listener != null) {
+        listener.upperBoundImproved(td);
+      }
+    }
+  }
+  
+  /**
+   * Passes the current lower bound and obstruction to the listener,
+   * if the bound is larger than those passed before
+   */
+  void offerLB() {
+    if (listener != null && gLB > lbOffered) {
+      lbOffered = gLB;
+      listener.lowerBoundRaised(gLB, obs);
+    }
+  }
+
+  /**
+   * Raises the lower bound, with the obstruction certifying it, unless
+   * a larger bound is already known, and offers it to the listener.
+   * Called from any of the threads exploring the contraction tree
+   */
+  synchronized void raiseLB(int lb, Minor obs) {
+    if (lb <= gLB) {
+      return;
+    }
+    this.obs = obs;
+    gLB = lb;
+    offerLB();
+  }
+  
   void improveUB() {
     root.improveUB();   
   }
+  
+  PIDIterative newPIDIterative(Graph h, int k) {
+    PIDIterative pidi = new PIDIterative(h, k);
+    pidi.deadline = deadline;
+    return pidi;
+  }
+
+  /**
+   * Registers the PMCs kept by the compacted node, dropping those of the
+   * nodes used least recently if the budget, which the PMCs of the 
+   * transposition table count against as well, is exceeded
+   */
+  synchronized void summarize(Node node, Set<XBitSet> pmcs) {
+    long bytes = estimatedBytes(pmcs);
+    node.summary = pmcs;
+    summaries.put(node, bytes);
+    summaryBytes += bytes;
+    if (summaryBudget <= 0) {
+      return;
+    }
+    Iterator<Map.Entry<Node, Long>> it = summaries.entrySet().iterator();
+    while (summaryBytes + transpositionBytes() > summaryBudget && 
+        it.hasNext()) {
+      Map.Entry<Node, Long> entry = it.next();
+      if (entry.getKey() == node) {
+        continue;
+      }
+      entry.getKey().summary = null;
+      summaryBytes -= entry.getValue();
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns the entry of the transposition table for the minor
+   * @return the entry; {@code null} if nothing is known of the minor
+   * or the table is not kept
+   */
+  TranspositionTable.Entry transposition(Minor minor) {
+    if (transpositions == null) {
+      return null;
+    }
+    return transpositions.get(minor);
+  }
+
+  /**
+   * Returns the estimated bytes of the PMCs kept by the transposition
+   * table, which count against the budget of the summaries
+   */
+  long transpositionBytes() {
+    return transpositions == null ? 0 : transpositions.bytes();
+  }
+
+  synchronized boolean withinBudget() {
+    return summaryBudget <= 0 || 
+        summaryBytes + transpositionBytes() <= summaryBudget;
+  }
+
+  /**
+   * Drops the PMCs kept by the compacted node, which is no longer 
+   * to be inherited from
+   */
+  synchronized void forget(Node node) {
+    Long bytes = summaries.remove(node);
+    if (bytes != null) {
+      summaryBytes -= bytes;
+    }
+    node.summary = null;
+  }
+
+  /**
+   * Returns the PMCs kept by the compacted node, marking it as used
+   * @return the PMCs; {@code null} if dropped
+   */
+  synchronized Set<XBitSet> summaryOf(Node node) {
+    if (summaries.get(node) == null) {
+      return null;
+    }
+    return node.summary;
+  }
+
+  static long estimatedBytes(Set<XBitSet> pmcs) {
+    long bytes = 0;
+    for (XBitSet pmc: pmcs) {
+      // the words, the headers of the set and its array, and the entry
+      bytes += ((pmc.length() + 63) >> 6) * 8 + 80;
+    }
+    return bytes;
+  }
    
   TreeDecomposition greedyDecomposition(Graph h) {
     Graph h1 = h.copy();
@@ -137,22 +378,22 @@ static final boolean STACK_TRACE = false;
   
   class EdgeValue implements Comparable<EdgeValue>{
     Edge edge;
-    Graph h;
+    NeighborFill fill;
     int nMiss1;
     int deg1;
     int nMiss2;
     int deg2;
     
-    EdgeValue(Edge edge, Graph h) {
+    EdgeValue(Edge edge, NeighborFill fill) {
       this.edge = edge;
-      this.h = h;
+      this.fill = fill;
     }
     
     void evaluate() {
-      int du = h.neighborSet[edge.u].cardinality();
-      int dv = h.neighborSet[edge.v].cardinality();
-      int mu = nMissings(edge.u, edge.v, h);
-      int mv = nMissings(edge.v, edge.u, h);
+      int du = fill.degree(edge.u);
+      int dv = fill.degree(edge.v);
+      int mu = fill.nMissings(edge.u, edge.v);
+      int mv = fill.nMissings(edge.v, edge.u);
       if (compare(mu, du, mv, dv) < 0) {
         deg1 = du;
         nMiss1 = mu;
@@ -186,17 +427,6 @@ static final boolean STACK_TRACE = false;
         return nMiss1 * deg2 - nMiss2 * deg1; 
       }
     }
-    
-    int nMissings(int u, int v, Graph h) {
-      int count = 0;
-      XBitSet nb = h.neighborSet[u].removeBit(v);
-      for (int w = nb.nextSetBit(0); w >= 0; w = nb.nextSetBit(w + 1)) {
-        count += nb.subtract(h.neighborSet[w]).cardinality()  - 1;
-      }
-      assert count % 2 == 0;
-      return count / 2;
-    }
-
   }
 
   class Node {
@@ -208,6 +438,14 @@ static final boolean STACK_TRACE = false;
     Graph h;
     Node child;
     PIDIterative pidi;
+    // the PMCs to inherit from, in place of pidi, once compacted;
+    // accessed through summaryOf
+    Set<XBitSet> summary;
+    // for the scores of the edges in availables
+    NeighborFill fill;
+    // the deadline of the parent, or a child of it to be cancelled
+    // if this node is explored speculatively
+    Deadline deadline;
 
     TreeDecomposition td;
 
@@ -231,10 +469,12 @@ static final boolean STACK_TRACE = false;
     int nChild;
 
     Node(Graph g, PIDIterative pidi) {
+      deadline = ContractionRecursive.this.deadline;
       h = g;
       minor = new Minor(g);
       this.pidi = pidi;
       td = pidi.getTD();
+      fill = new NeighborFill(g);
       availables = g.edgeList();
       sortAvailables();
       reducerMap = new HashMap<>();
@@ -244,8 +484,13 @@ static final boolean STACK_TRACE = false;
     }
 
     Node(Node parent, Edge e) {
+      this(parent, e, parent.deadline);
+    }
+
+    Node(Node parent, Edge e, Deadline deadline) {
       this.parent = parent;
       this.e = e;
+      this.deadline = deadline;
       assert parent.h.areAdjacent(e.u, e.v);
       iMinor = new Minor(parent.h);
       iMinor = iMinor.contract(e.u, e.v);
@@ -259,22 +504,24 @@ static final boolean STACK_TRACE = false;
       }
     }
 
-    Node(Node parent, Edge e, Node ancestor) {
+    Node(Node parent, Edge e, Node ancestor, Set<XBitSet> pmcs) {
       this.parent = parent;
       this.parent = parent;
       this.e = e;
+      deadline = parent.deadline;
       assert parent.h.areAdjacent(e.u, e.v);
       iMinor = new Minor(parent.h);
       iMinor = iMinor.contract(e.u, e.v);
       h = iMinor.getGraph();      
       verifyMinor(iMinor, parent.h, h);
       minor = iMinor.composeWith(parent.minor);
-      inheritPMCs(ancestor);
+      inheritPMCs(ancestor, pmcs);
     }
 
     Node(Node parent, Block safeBlock) {
       this.parent = parent;
       this.safeBlock = safeBlock;
+      deadline = parent.deadline;
       iMinor = new Minor(parent.h);
       for (Edge e: safeBlock.contractions) {
         iMinor = iMinor.contract(iMinor.map[e.u], iMinor.map[e.v]);
@@ -290,6 +537,12 @@ static final boolean STACK_TRACE = false;
       }
     }
 
+    PIDIterative newPIDIterative(Graph h, int k) {
+      PIDIterative pidi = new PIDIterative(h, k);
+      pidi.deadline = deadline;
+      return pidi;
+    }
+
     void verifyMinor(Minor minor, Graph h1, Graph h2) {
       for (int v = 0;  v < h1.n; v++) {
         int u = minor.map[v];
@@ -309,12 +562,26 @@ static final boolean STACK_TRACE = false;
     
     void initialBounds() {
       ns = 1;
+      TranspositionTable.Entry entry = transposition(minor);
+      if (entry != null && entry.width <= kTarget) {
+        if (TRACE) {
+          System.out.println(indent() + "ub from the transposition table");
+        }
+        pidi = newPIDIterative(h, kTarget);
+        pidi.importPMCs(entry.pmcs);
+        td = pidi.getTD();
+        return;
+      }
       ContractionBT cbt = new ContractionBT(parent.h, iMinor, parent.pidi.pmcs());
       td = cbt.firstTD();
       td = MinimalizeTD.minimalize(td);
       Set<XBitSet> pmcs = td.setOfBags();
-      pidi = new PIDIterative(h, kTarget);
+      pidi = newPIDIterative(h, kTarget);
       pidi.importPMCs(pmcs);
+      if (entry != null && entry.pmcs != null) {
+        // for a larger target, but still a good start
+        pidi.importPMCs(entry.pmcs);
+      }
       if (ub() < root.ub()) {
         if (TRACE) {
           System.out.println(indent() + "inheriting from parent lowered ub");
@@ -323,14 +590,60 @@ static final boolean STACK_TRACE = false;
     }
 
 
-    void inheritPMCs(Node node) {
-      assert node.pidi != null;
+    /**
+     * Returns the PMCs to be inherited from this node into a minor
+     * @param n the number of vertices of the minor
+     * @return the PMCs; {@code null} if this node has been compacted
+     * and its PMCs dropped 
+     */
+    Set<XBitSet> pmcsToInherit(int n) {
+      PIDIterative pidi = this.pidi;
+      if (pidi == null) {
+        return summaryOf(this);
+      }
+      Set<XBitSet> pmcs = pidi.pmcs();
+      if (pmcs.size() > n * N_CONDUCIVES_RATIO) {
+        pmcs = pidi.conducives(n * N_CONDUCIVES_RATIO);
+      }
+      return pmcs;
+    }
 
-      Minor minor1 = minor.rebase(node.minor);
-      Set<XBitSet> pmcs1 = node.pidi.pmcs();
-      if (pmcs1.size() > h.n * N_CONDUCIVES_RATIO) {
-        pmcs1 = node.pidi.conducives(h.n * N_CONDUCIVES_RATIO);
+    /**
+     * Drops the search state of this node, explored and imported from,
+     * keeping its minor and the PMCs to be inherited from it
+     */
+    void compact() {
+      releaseChildren();
+      summarize(this, pmcsToInherit(h.n));
+      pidi = null;
+      td = null;
+      availables = null;
+      reducerMap = null;
+      child = null;
+      safeBlock = null;
+      fill = null;
+    }
+
+    /**
+     * Drops from the summaries the compacted children of this node, 
+     * done with, which are reachable only through it.
+     * The children of a compacted child have been dropped when it was
+     * compacted, and those of the last child, if not compacted, such as 
+     * a child for a safe separator, are dropped here
+     */
+    void releaseChildren() {
+      for (Node node: reducerMap.values()) {
+        if (node.parent == this) {
+          forget(node);
+        }
+      }
+      if (child != null && child.reducerMap != null) {
+        child.releaseChildren();
       }
+    }
+
+    void inheritPMCs(Node node, Set<XBitSet> pmcs1) {
+      Minor minor1 = minor.rebase(node.minor);
       ContractionBT cbt = new ContractionBT(node.h, minor1, pmcs1);
           
       Set<XBitSet> pmcs = new HashSet<>();
@@ -341,7 +654,7 @@ static final boolean STACK_TRACE = false;
         td = cbt.anotherTD();
       }
       if (pidi == null) {
-        pidi = new PIDIterative(h, kTarget);
+        pidi = newPIDIterative(h, kTarget);
       }
       pidi.importPMCs(pmcs);
     }
@@ -452,7 +765,9 @@ static final boolean STACK_TRACE = false;
         reducerMap.put(e1, parent.reducerMap.get(e));
       }
       
-      Set<Edge> inherited = new HashSet<>();
+      // the edges inherited, as u * h.n + v for u < v, to be deduplicated
+      long[] inherited = new long[parent.availables.size()];
+      int k = 0;
       for (Edge e: parent.availables) {
         int u = iMinor.map[e.u];
         int v = iMinor.map[e.v];
@@ -461,23 +776,32 @@ static final boolean STACK_TRACE = false;
               " " + e.u + ", " + e.v + " : " + parent.h.n;
           Edge e1 = new Edge(u, v, h.n);
           if (reducerMap.get(e1) == null) {
-            inherited.add(e1);
+            inherited[k++] = (long) e1.u * h.n + e1.v;
           }
         }
       }
-      availables = new ArrayList<>(inherited);
+      Arrays.sort(inherited, 0, k);
+      availables = new ArrayList<>(k);
+      for (int i = 0; i < k; i++) {
+        if (i == 0 || inherited[i] != inherited[i - 1]) {
+          availables.add(new Edge((int) (inherited[i] / h.n), 
+              (int) (inherited[i] % h.n), h.n));
+        }
+      }
+      fill = new NeighborFill(h, parent.fill, iMinor.map);
       sortAvailables();
     }
 
     void sortAvailables() {
-      Map<Edge, EdgeValue> evalMap = new HashMap<>();
-      for (Edge e: availables) {
-        EdgeValue ev = new EdgeValue(e, h);
-        ev.evaluate();
-        evalMap.put(e, ev);
+      EdgeValue[] evs = new EdgeValue[availables.size()];
+      for (int i = 0; i < evs.length; i++) {
+        evs[i] = new EdgeValue(availables.get(i), fill);
+        evs[i].evaluate();
+      }
+      Arrays.sort(evs);
+      for (int i = 0; i < evs.length; i++) {
+        availables.set(i, evs[i].edge);
       }
-      availables.sort((e1, e2) -> 
-      evalMap.get(e1).compareTo(evalMap.get(e2)));
     }
 
     boolean importFrom(Node node) {
@@ -507,6 +831,7 @@ static final boolean STACK_TRACE = false;
         for (XBitSet bag: td1.setOfBags()) {
           cg.fill(bag);
         }
+        deadline.check();
         SemiPIDConstr spidIncr = new SemiPIDConstr(h, cg);
         spidIncr.decideWidth();
         Set<XBitSet> pmcs = spidIncr.usefulPMCs();
@@ -530,6 +855,16 @@ static final boolean STACK_TRACE = false;
       if (ub() <= kTarget) {
         return;
       }
+      deadline.check();
+
+      TranspositionTable.Entry entry = transposition(minor);
+      if (entry != null && entry.lb > kTarget) {
+        if (TRACE) {
+          System.out.println(indent() + "infeasibility from the transposition table");
+        }
+        raiseLB(entry.lb, minor);
+        return;
+      }
 
       Block safe = findSafeBlock();
       if (safe != null) {
@@ -545,10 +880,14 @@ static final boolean STACK_TRACE = false;
       }
 
       for (Edge e: reducerMap.keySet()) {
+        Node node = reducerMap.get(e);
+        Set<XBitSet> pmcs = node.pmcsToInherit(h.n);
+        if (pmcs == null) {
+          continue;
+        }
         if (e.u == e.v) {
-          Node node = reducerMap.get(e);
           assert node.minor.isAnUncontractionOf(minor);
-          inheritPMCs(node);
+          inheritPMCs(node, pmcs);
           assert ub() < root.ub();
           if (TRACE) {
             System.out.println(indent() + "ub lowered because a reducing edge has been contracted");
@@ -556,7 +895,7 @@ static final boolean STACK_TRACE = false;
           return;
         }
         
-        Node child = new Node(this, e, reducerMap.get(e));
+        Node child = new Node(this, e, node, pmcs);
         if (TRACE_DETAIL) {
           System.out.println("trying reducer child " + child);
         }
@@ -570,39 +909,20 @@ static final boolean STACK_TRACE = false;
       }
 
       nChild = 0;
-      while (!availables.isEmpty()) {
-        Edge e = availables.get(0);
-        availables.remove(e);
-        child = new Node(this, e);
-        child.improveUB();
-        assert child.ub() <= kTarget || gLB == root.ub();
-        if (gLB == root.ub()) {
-          return;
-        }
-        nChild++;
-        reducerMap.put(e, child);
-        
-        assert child.pidi != null;
-        importFrom(child);
-
-        if (ub() <= kTarget) {
-          if (TRACE_DETAIL) {
-            System.out.println(indent() + "ub lowered by importing, returning " + this + ", " +  
-                (System.currentTimeMillis() - t0) + " millisecs"); 
-          }
+      if (parallelism > 1 && depth() < SPECULATION_DEPTH) {
+        if (exploreSpeculatively()) {
           return;
         }
-        pidi.improve(UNIT_BUDGET_UB * nChild);
-        if (ub() <= kTarget) {
-          if (TRACE) {
-            System.out.println(indent() + "ub lowered by importing and improving, returning " + this + ", " +  
-                (System.currentTimeMillis() - t0) + " millisecs"); 
+      }
+      else {
+        while (!availables.isEmpty()) {
+          Edge e = availables.get(0);
+          availables.remove(e);
+          child = new Node(this, e);
+          child.improveUB();
+          if (childExplored(e, child)) {
+            return;
           }
-          return;
-        }
-        if (TRACE) {
-          System.out.println(indent() + "ub failed to be lowered by importing " + this + ", " +  
-              (System.currentTimeMillis() - t0) + " millisecs"); 
         }
       }
       if (TRACE) {
@@ -624,13 +944,160 @@ static final boolean STACK_TRACE = false;
         System.out.println(indent() + "infeasibility established " + pidi.nTicks + " ticks " + 
             (System.currentTimeMillis() - t0) + " millisecs");
       }
-      gLB = kTarget + 1;
-      obs = minor;
+      if (transpositions != null) {
+        transpositions.offerLB(minor, kTarget + 1);
+      }
+      raiseLB(kTarget + 1, minor);
       return;
     }
 
+    /**
+     * Stores the result of the child, whose improveUB has returned,
+     * in the transposition table, if kept and within the budget
+     */
+    void remember(Node child) {
+      if (transpositions == null || !withinBudget()) {
+        return;
+      }
+      TranspositionTable.Entry entry = transpositions.get(child.minor);
+      int w = child.pidi.width();
+      if (entry == null || w < entry.width) {
+        // the bags of a minimal triangulation, which are PMCs 
+        TreeDecomposition td = MinimalizeTD.minimalize(child.pidi.getTD());
+        transpositions.offerUB(child.minor, td.width, td.setOfBags());
+      }
+    }
+
+    /**
+     * Takes the result of the child for the edge, whose improveUB has
+     * returned, importing from it and improving pidi further
+     * @return true if ub has been lowered to kTarget or infeasibility
+     * has been established, so that no more children are to be explored
+     */
+    boolean childExplored(Edge e, Node child) {
+      assert child.ub() <= kTarget || gLB == root.ub();
+      if (gLB == root.ub()) {
+        return true;
+      }
+      remember(child);
+      nChild++;
+      reducerMap.put(e, child);
+      
+      assert child.pidi != null;
+      importFrom(child);
+      if (compactChildren) {
+        child.compact();
+      }
+
+      if (ub() <= kTarget) {
+        if (TRACE_DETAIL) {
+          System.out.println(indent() + "ub lowered by importing, returning " + this + ", " +  
+              (System.currentTimeMillis() - t0) + " millisecs"); 
+        }
+        return true;
+      }
+      pidi.improve(UNIT_BUDGET_UB * nChild);
+      deadline.check();
+      if (ub() <= kTarget) {
+        if (TRACE) {
+          System.out.println(indent() + "ub lowered by importing and improving, returning " + this + ", " +  
+              (System.currentTimeMillis() - t0) + " millisecs"); 
+        }
+        return true;
+      }
+      if (TRACE) {
+        System.out.println(indent() + "ub failed to be lowered by importing " + this + ", " +  
+            (System.currentTimeMillis() - t0) + " millisecs"); 
+      }
+      return false;
+    }
+
+    /**
+     * Explores the children for the edges in availables as the sequential
+     * loop of improveUB does, but with up to parallelism of them in 
+     * progress at the same time, each on a worker with its own pidi.
+     * The children are taken in the order of the edges, so that the outcome
+     * does not depend on the timing.
+     * Once one of them lowers ub to kTarget or establishes infeasibility,
+     * the rest are cancelled and their edges are put back to availables,
+     * for the later targets
+     * @return true if ub has been lowered to kTarget or infeasibility
+     * has been established
+     */
+    boolean exploreSpeculatively() {
+      ForkJoinPool executor = WorkerPools.pool(Kind.SPECULATION, parallelism);
+      Deadline cancellable = deadline.newChild();
+      ArrayDeque<Speculation> inProgress = new ArrayDeque<>();
+      try {
+        while (true) {
+          while (inProgress.size() < parallelism && !availables.isEmpty()) {
+            Edge e = availables.remove(0);
+            inProgress.add(new Speculation(e, cancellable, executor));
+          }
+          if (inProgress.isEmpty()) {
+            return false;
+          }
+          Speculation s = inProgress.remove();
+          if (!s.join()) {
+            // cancelled by a sibling establishing infeasibility
+            assert gLB == root.ub();
+            return true;
+          }
+          if (childExplored(s.e, s.child)) {
+            return true;
+          }
+        }
+      } finally {
+        cancellable.cancel();
+        ArrayList<Edge> unexplored = new ArrayList<>();
+        for (Speculation s: inProgress) {
+          s.task.quietlyJoin();
+          unexplored.add(s.e);
+        }
+        availables.addAll(0, unexplored);
+      }
+    }
+
+    /**
+     * A child being explored on a worker of the speculation pool
+     */
+    class Speculation {
+      Edge e;
+      Node child;
+      ForkJoinTask<?> task;
+
+      Speculation(Edge e, Deadline cancellable, ForkJoinPool executor) {
+        this.e = e;
+        child = new Node(Node.this, e, cancellable);
+        task = executor.submit(() -> {
+          child.improveUB();
+          if (gLB == root.ub()) {
+            // the siblings are of no use any more
+            cancellable.cancel();
+          }
+        });
+      }
+
+      /**
+       * Waits for the child to be explored
+       * @return false if it has been cancelled
+       */
+      boolean join() {
+        try {
+          task.join();
+          return true;
+        } catch (DeadlineExceededException ex) {
+          if (deadline.isExpired()) {
+            throw ex;
+          }
+          return false;
+        }
+      }
+    }
+
     Set<XBitSet> minSeps(Graph h, int k) {
       MinSepsGenerator msg = new MinSepsGenerator(h, k);
+      msg.deadline = deadline;
       msg.generate();
       return msg.minSeps;
     }
@@ -659,13 +1126,12 @@ static final boolean STACK_TRACE = false;
       if (TRACE) {
         System.out.println(indent() + "new LB " + lb);
       }
-      gLB = lb;
       if (minimalize) {
-        MinimalObstruction mo = new MinimalObstruction(h, lb - 1);
-        obs = mo.minimal().composeWith(minor);  
+        MinimalObstruction mo = new MinimalObstruction(h, lb - 1, deadline);
+        raiseLB(lb, mo.minimal().composeWith(minor));  
       }
       else {
-        obs = minor;
+        raiseLB(lb, minor);
       }
     }
     
@@ -699,16 +1165,18 @@ static final boolean STACK_TRACE = false;
         assert child.ub() == gLB;
         return;
       }
+      remember(child);
 
       if (TRACE) {
         System.out.println(indent() + "child width improved for the safe sep child " + child);
       }
 
       Set<XBitSet> pmcs = importPMCsViaSafeSep(child, block);
+      child.releaseChildren();
       if (TRACE) {
         System.out.println(indent() + "imported from safe sep child, this: " + this);
       }
-      pidi = new PIDIterative(h, kTarget);
+      pidi = newPIDIterative(h, kTarget);
       pidi.importPMCs(pmcs);
       assert ub() == child.ub();
       return;
@@ -881,7 +1349,9 @@ static final boolean STACK_TRACE = false;
       StringBuilder sb = new StringBuilder();
       sb.append("Node n " + h.n + " nChild " + nChild + 
           " gLB " + gLB + ", ub " + ub() +  " kTarget " + kTarget);
-      sb.append(" pmcs " + pidi.pmcMap.size());
+      if (pidi != null) {
+        sb.append(" pmcs " + pidi.pmcMap.size());
+      }
       if (availables != null) {
         sb.append(" availabes " + availables.size());
       }
@@ -890,6 +1360,7 @@ static final boolean STACK_TRACE = false;
 
     Set<XBitSet> usefulSeparators(int k) {
       MinSepsGenerator msg = new MinSepsGenerator(h, k);
+      msg.deadline = deadline;
       msg.generate();
       Set<XBitSet> minSeps = msg.minSeps;
       Set<XBitSet> usefuls = new HashSet<>();
@@ -898,7 +1369,7 @@ static final boolean STACK_TRACE = false;
       while (moving && usefuls.size() < h.n * N_CONDUCIVES_RATIO) {
         moving = false;
         int nc = usefuls.size();
-        SemiPID spid = new SemiPID(h, k, minSeps, false);
+        SemiPID spid = new SemiPID(h, k, minSeps, false, deadline);
         TreeDecomposition td = spid.decompose();
         if (td == null) {
           return usefuls;
@@ -914,6 +1385,7 @@ static final boolean STACK_TRACE = false;
     
     Set<XBitSet> generateConducives(int k) {
       MinSepsGenerator msg = new MinSepsGenerator(h, k);
+      msg.deadline = deadline;
       msg.generate();
       return generateConducives(k, msg.minSeps);
     }
@@ -925,7 +1397,7 @@ static final boolean STACK_TRACE = false;
       while (moving && conducives.size() < h.n * 2) {
         moving = false;
         int nc = conducives.size();
-        SemiPID spid = new SemiPID(h, k, minSeps, false);
+        SemiPID spid = new SemiPID(h, k, minSeps, false, deadline);
         TreeDecomposition td = spid.decompose();
         if (td == null) {
           return conducives;
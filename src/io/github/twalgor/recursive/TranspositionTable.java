@@ -0,0 +1,136 @@
+package io.github.twalgor.recursive;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.twalgor.common.Minor;
+import io.github.twalgor.common.XBitSet;
+
+/**
+ * The results of the nodes of the contraction tree of
+ * {@code ContractionRecursive}, keyed by their minors, so that a minor
+ * reached again by another sequence of contractions starts from them.
+ * The components of a minor obtained by contractions stay ordered by
+ * their smallest vertices, so that two minors partitioning the vertices
+ * the same way have the same graph, vertex numbers included, and the map
+ * from the vertices to the components serves as the key.
+ * Kept only if {@code ContractionRecursive.TRANSPOSITIONS} is set,
+ * the PMCs stored counting against the budget of the summaries.
+ * Safe for concurrent use.
+ */
+class TranspositionTable {
+  // the number of minors beyond which no new minor is stored
+  static int CAPACITY = 1 << 12;
+
+  ConcurrentHashMap<Key, Entry> map;
+  // the estimated bytes of the PMCs of the entries
+  AtomicLong bytes;
+
+  TranspositionTable() {
+    map = new ConcurrentHashMap<>();
+    bytes = new AtomicLong();
+  }
+
+  /**
+   * What is known of a minor: a set of PMCs, of its graph, containing
+   * a tree decomposition of the width, and a lower bound on the treewidth.
+   * Replaced, not modified, when improved
+   */
+  static class Entry {
+    final int width;
+    final Set<XBitSet> pmcs;
+    final int lb;
+
+    Entry(int width, Set<XBitSet> pmcs, int lb) {
+      this.width = width;
+      this.pmcs = pmcs;
+      this.lb = lb;
+    }
+  }
+
+  static class Key {
+    final int[] map;
+    final int hash;
+
+    Key(Minor minor) {
+      map = minor.map;
+      hash = Arrays.hashCode(map);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(map, ((Key) o).map);
+    }
+  }
+
+  /**
+   * Returns the entry for the minor
+   * @param minor the minor of the graph being solved
+   * @return the entry; {@code null} if nothing is known of the minor
+   */
+  Entry get(Minor minor) {
+    return map.get(new Key(minor));
+  }
+
+  /**
+   * Stores the PMCs for the minor, if they are narrower than those
+   * stored before
+   * @param minor the minor
+   * @param width the width of the decomposition contained
+   * @param pmcs the PMCs, not to be modified afterwards
+   */
+  void offerUB(Minor minor, int width, Set<XBitSet> pmcs) {
+    Key key = new Key(minor);
+    if (map.size() >= CAPACITY && !map.containsKey(key)) {
+      return;
+    }
+    long added = ContractionRecursive.estimatedBytes(pmcs);
+    map.compute(key, (k, e0) -> {
+      if (e0 == null) {
+        bytes.addAndGet(added);
+        return new Entry(width, pmcs, 0);
+      }
+      if (width >= e0.width) {
+        return e0;
+      }
+      long dropped = e0.pmcs == null ? 0 : 
+          ContractionRecursive.estimatedBytes(e0.pmcs);
+      bytes.addAndGet(added - dropped);
+      return new Entry(width, pmcs, e0.lb);
+    });
+  }
+
+  /**
+   * Stores the lower bound for the minor, if larger than the one
+   * stored before
+   * @param minor the minor
+   * @param lb the lower bound on the treewidth of its graph
+   */
+  void offerLB(Minor minor, int lb) {
+    Key key = new Key(minor);
+    if (map.size() >= CAPACITY && !map.containsKey(key)) {
+      return;
+    }
+    map.merge(key, new Entry(Integer.MAX_VALUE, null, lb), (e0, e1) ->
+        e1.lb > e0.lb ? new Entry(e0.width, e0.pmcs, e1.lb) : e0);
+  }
+
+  int size() {
+    return map.size();
+  }
+
+  /**
+   * Returns the estimated bytes of the PMCs stored
+   * @return the bytes
+   */
+  long bytes() {
+    return bytes.get();
+  }
+}
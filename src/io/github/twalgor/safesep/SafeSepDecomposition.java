@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Set;
 
 import io.github.twalgor.common.Chordal;
+import io.github.twalgor.common.Deadline;
 import io.github.twalgor.common.Edge;
 import io.github.twalgor.common.Graph;
 import io.github.twalgor.common.Minor;
@@ -27,6 +28,9 @@ public class SafeSepDecomposition {
   
   enum Method {acOnly, greedy, greedyAndBacktrack};
   Method method;
+  // once this is expired, only the almost clique separators are 
+  // taken as safe, which still gives a valid decomposition
+  public Deadline deadline = Deadline.NONE;
   
   public SafeSepDecomposition(Graph g) {
     this(g, Method.greedyAndBacktrack);
@@ -76,7 +80,7 @@ public class SafeSepDecomposition {
         safeEdges.add(te);
         continue;
       }
-      if (method == Method.acOnly) { 
+      if (method == Method.acOnly || deadline.isExpired()) { 
         continue;
       }
       XBitSet subtree1 = subtree(tree, nodes, b1, b2);
@@ -0,0 +1,204 @@
+package io.github.twalgor.sieve;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import io.github.twalgor.common.VertexSet;
+import io.github.twalgor.common.XBitSet;
+
+/**
+ * The trie of {@code SubblockSieve} for concurrent use: any number of
+ * threads may add and query at the same time.
+ * The levels are those of {@code FlatSieveTrie}, one for each 32 bits of
+ * the closures.  The children of a node are held in an immutable snapshot
+ * of sorted labels and child references; an insertion builds the new
+ * snapshot, together with the whole path below the new entry, and
+ * publishes it with a compare-and-set of the volatile reference of
+ * the node, retrying if another insertion got there first.
+ * Insertions are thus lock-free, and queries, which read each snapshot
+ * once, are wait-free and never see a partially built entry.
+ * A query sees the components whose insertion completed before it
+ * reached the nodes concerned, and may or may not see those being
+ * inserted concurrently.
+ */
+class ConcurrentSieveTrie {
+  static final Entries EMPTY = new Entries(new long[0], new Object[0]);
+
+  static final AtomicReferenceFieldUpdater<Node, Entries> ENTRIES =
+      AtomicReferenceFieldUpdater.newUpdater(Node.class, Entries.class, "entries");
+
+  final int n;
+  final int levels;
+  final int width;
+  final int nWords;
+
+  // the node at the top of the trie for the components with nn neighbors
+  final Node[] root;
+
+  ConcurrentSieveTrie(int n, int width) {
+    this.n = n;
+    this.width = width;
+    levels = (n + 31) >>> 5;
+    nWords = VertexSet.wordsFor(n);
+    root = new Node[width + 1];
+    for (int nn = 0; nn <= width; nn++) {
+      root[nn] = new Node();
+    }
+  }
+
+  static class Entries {
+    // labels[i] is the word of the closures of the subtree below
+    // children[i], which is a Node or, at the last level, a Leaf
+    final long[] labels;
+    final Object[] children;
+
+    Entries(long[] labels, Object[] children) {
+      this.labels = labels;
+      this.children = children;
+    }
+
+    Entries insert(int i, long label, Object child) {
+      int size = labels.length;
+      long[] ls = new long[size + 1];
+      Object[] cs = new Object[size + 1];
+      System.arraycopy(labels, 0, ls, 0, i);
+      System.arraycopy(children, 0, cs, 0, i);
+      ls[i] = label;
+      cs[i] = child;
+      System.arraycopy(labels, i, ls, i + 1, size - i);
+      System.arraycopy(children, i, cs, i + 1, size - i);
+      return new Entries(ls, cs);
+    }
+  }
+
+  static class Node {
+    volatile Entries entries = EMPTY;
+  }
+
+  static class Leaf {
+    final XBitSet component;
+    final long[] words;
+
+    Leaf(XBitSet component, int nWords) {
+      this.component = component;
+      words = Arrays.copyOf(component.toLongArray(), nWords);
+    }
+  }
+
+  /**
+   * Adds the component with the given closure
+   * @return {@code true} if the closure was not sieved yet
+   */
+  boolean add(VertexSet closure, int nn, XBitSet component) {
+    Node x = root[nn];
+    int level = 0;
+    while (true) {
+      long label = FlatSieveTrie.chunk(closure, level);
+      Entries e = x.entries;
+      int i = Arrays.binarySearch(e.labels, label);
+      if (i >= 0) {
+        if (level == levels - 1) {
+          // the same closure is already sieved
+          return false;
+        }
+        x = (Node) e.children[i];
+        level++;
+        continue;
+      }
+      Object c = path(closure, level + 1, component);
+      if (ENTRIES.compareAndSet(x, e, e.insert(-i - 1, label, c))) {
+        return true;
+      }
+      // another insertion has changed the node: look again
+    }
+  }
+
+  /**
+   * Builds the chain of nodes for the levels from {@code level} on,
+   * ending at the leaf of the component
+   */
+  Object path(VertexSet closure, int level, XBitSet component) {
+    if (level == levels) {
+      return new Leaf(component, nWords);
+    }
+    Node x = new Node();
+    x.entries = new Entries(new long[] {FlatSieveTrie.chunk(closure, level)},
+        new Object[] {path(closure, level + 1, component)});
+    return x;
+  }
+
+  boolean get(VertexSet closure, VertexSet neighbors, VertexSet scope,
+      SieveVisitor visitor) {
+    for (int nn = 1; nn <= width; nn++) {
+      if (!get(root[nn], 0, nn, closure, neighbors, scope, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean get(Node x, int level, int nNeighb, VertexSet closure, VertexSet neighbors,
+      VertexSet scope, SieveVisitor visitor) {
+    long cl = FlatSieveTrie.chunk(closure, level);
+    long nb = FlatSieveTrie.chunk(neighbors, level);
+    boolean last = level == levels - 1;
+    Entries e = x.entries;
+    long[] labels = e.labels;
+    for (int i = 0; i < labels.length; i++) {
+      long label = labels[i];
+      if ((label & ~cl) != 0) {
+        continue;
+      }
+      int nn = nNeighb + Long.bitCount(nb & ~label);
+      if (nn > width) {
+        continue;
+      }
+      if (last) {
+        Leaf leaf = (Leaf) e.children[i];
+        if (inScope(leaf, scope) && !visitor.visit(leaf.component)) {
+          return false;
+        }
+      }
+      else if (!get((Node) e.children[i], level + 1, nn,
+          closure, neighbors, scope, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean inScope(Leaf leaf, VertexSet scope) {
+    for (int j = 0; j < nWords; j++) {
+      if ((leaf.words[j] & ~scope.word(j)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void dump() {
+    for (int nn = 1; nn <= width; nn++) {
+      if (root[nn].entries.labels.length == 0) {
+        System.out.println("width " + nn + " sieve empty");
+      }
+      else {
+        System.out.println("width " + nn + ":" );
+        dump(root[nn], 0, "");
+      }
+    }
+  }
+
+  void dump(Node x, int level, String indent) {
+    Entries e = x.entries;
+    for (int i = 0; i < e.labels.length; i++) {
+      System.out.print(indent + level + " " + Long.toHexString(e.labels[i]));
+      if (level == levels - 1) {
+        System.out.println(" " + ((Leaf) e.children[i]).component);
+      }
+      else {
+        System.out.println();
+        dump((Node) e.children[i], level + 1, indent + " ");
+      }
+    }
+  }
+}
@@ -0,0 +1,325 @@
+package io.github.twalgor.sieve;
+
+import java.util.Arrays;
+
+import io.github.twalgor.common.VertexSet;
+import io.github.twalgor.common.XBitSet;
+
+/**
+ * The trie of {@code SubblockSieve} stored in a few large primitive arrays
+ * instead of a tree of node objects.
+ * The trie has one level for each 32 bits of the closures, so that
+ * a mismatch in the lower half of a word prunes the subtree early.
+ * The children of a node occupy a contiguous block of
+ * the parallel arrays {@code labels} and {@code child}, sorted by label;
+ * at the last level, {@code child} holds the index of the component
+ * in {@code components} instead of a node.
+ * The words of the components are also packed in {@code componentWords},
+ * so that the final test against the scope does not touch the
+ * {@code XBitSet}s.
+ * A block that becomes full is moved to the end of the arrays with twice
+ * the capacity, leaving its old slots unused.
+ * For a graph with at most {@code MAX_WORDS_N} vertices, the sets can 
+ * also be given as their two words, which spares the caller 
+ * the {@code VertexSet}s of the query.
+ */
+class FlatSieveTrie {
+  static final int INITIAL_CAPACITY = 16;
+  static final int INITIAL_BLOCK = 1;
+  // the largest number of vertices for the methods on two words
+  static final int MAX_WORDS_N = 128;
+
+  final int n;
+  final int levels;
+  final int width;
+
+  // the entries: labels[i] is the word of the closures of the subtree
+  // below the entry, child[i] the node or, at the last level, the component
+  long[] labels;
+  int[] child;
+  int nEntries;
+
+  // the nodes: the block of the children of node x
+  // is [blockStart[x], blockStart[x] + blockSize[x])
+  int[] blockStart;
+  int[] blockSize;
+  int[] blockCapacity;
+  int nNodes;
+
+  XBitSet[] components;
+  long[] componentWords;
+  final int nWords;
+  int nComponents;
+
+  // the node at the top of the trie for the components with
+  // nn neighbors; -1 if there is none
+  int[] root;
+
+  FlatSieveTrie(int n, int width) {
+    this.n = n;
+    this.width = width;
+    levels = (n + 31) >>> 5;
+    nWords = VertexSet.wordsFor(n);
+    labels = new long[INITIAL_CAPACITY];
+    child = new int[INITIAL_CAPACITY];
+    blockStart = new int[INITIAL_CAPACITY];
+    blockSize = new int[INITIAL_CAPACITY];
+    blockCapacity = new int[INITIAL_CAPACITY];
+    components = new XBitSet[INITIAL_CAPACITY];
+    componentWords = new long[INITIAL_CAPACITY * nWords];
+    root = new int[width + 1];
+    Arrays.fill(root, -1);
+  }
+
+  int newNode() {
+    if (nNodes == blockStart.length) {
+      int len = nNodes * 2;
+      blockStart = Arrays.copyOf(blockStart, len);
+      blockSize = Arrays.copyOf(blockSize, len);
+      blockCapacity = Arrays.copyOf(blockCapacity, len);
+    }
+    int x = nNodes++;
+    blockStart[x] = allocate(INITIAL_BLOCK);
+    blockSize[x] = 0;
+    blockCapacity[x] = INITIAL_BLOCK;
+    return x;
+  }
+
+  int allocate(int size) {
+    if (nEntries + size > labels.length) {
+      int len = Math.max(labels.length * 2, nEntries + size);
+      labels = Arrays.copyOf(labels, len);
+      child = Arrays.copyOf(child, len);
+    }
+    int start = nEntries;
+    nEntries += size;
+    return start;
+  }
+
+  int newComponent(XBitSet component) {
+    if (nComponents == components.length) {
+      components = Arrays.copyOf(components, nComponents * 2);
+      componentWords = Arrays.copyOf(componentWords, nComponents * 2 * nWords);
+    }
+    components[nComponents] = component;
+    long[] words = component.toLongArray();
+    System.arraycopy(words, 0, componentWords, nComponents * nWords, 
+        Math.min(words.length, nWords));
+    return nComponents++;
+  }
+
+  void add(VertexSet closure, int nn, XBitSet component) {
+    add(closure, 0, 0, nn, component);
+  }
+
+  /**
+   * Adds the component with the closure of the given two words,
+   * for a graph with at most {@code MAX_WORDS_N} vertices
+   */
+  void add(long c0, long c1, int nn, XBitSet component) {
+    assert n <= MAX_WORDS_N;
+    add(null, c0, c1, nn, component);
+  }
+
+  // the closure is given by c0 and c1 if it is null
+  private void add(VertexSet closure, long c0, long c1, int nn, 
+      XBitSet component) {
+    if (root[nn] < 0) {
+      root[nn] = newNode();
+    }
+    int x = root[nn];
+    for (int level = 0; level < levels; level++) {
+      long label = closure != null ? chunk(closure, level) : 
+        chunk(c0, c1, level);
+      int start = blockStart[x];
+      int size = blockSize[x];
+      int i = Arrays.binarySearch(labels, start, start + size, label);
+      if (i >= 0) {
+        if (level == levels - 1) {
+          // the same closure is already sieved
+          return;
+        }
+        x = child[i];
+        continue;
+      }
+      int c = level == levels - 1 ? newComponent(component) : newNode();
+      insert(x, -i - 1 - start, label, c);
+      x = c;
+    }
+  }
+
+  /**
+   * Inserts the entry at position {@code i} of the block of node {@code x}
+   */
+  void insert(int x, int i, long label, int c) {
+    int size = blockSize[x];
+    if (size == blockCapacity[x]) {
+      int start = allocate(size * 2);
+      System.arraycopy(labels, blockStart[x], labels, start, size);
+      System.arraycopy(child, blockStart[x], child, start, size);
+      blockStart[x] = start;
+      blockCapacity[x] = size * 2;
+    }
+    int p = blockStart[x] + i;
+    System.arraycopy(labels, p, labels, p + 1, size - i);
+    System.arraycopy(child, p, child, p + 1, size - i);
+    labels[p] = label;
+    child[p] = c;
+    blockSize[x] = size + 1;
+  }
+
+  /**
+   * Returns the 32 bits of the set for the given level, 
+   * as a non-negative {@code long}
+   */
+  static long chunk(VertexSet set, int level) {
+    return (set.word(level >>> 1) >>> ((level & 1) << 5)) & 0xffffffffL;
+  }
+
+  /**
+   * Returns the 32 bits for the given level of the set of the two words,
+   * as a non-negative {@code long}
+   */
+  static long chunk(long w0, long w1, int level) {
+    return ((level < 2 ? w0 : w1) >>> ((level & 1) << 5)) & 0xffffffffL;
+  }
+
+  boolean get(VertexSet closure, VertexSet neighbors, VertexSet scope,
+      SieveVisitor visitor) {
+    for (int nn = 1; nn <= width; nn++) {
+      if (root[nn] >= 0 &&
+          !get(root[nn], 0, nn, closure, neighbors, scope, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean get(int x, int level, int nNeighb, VertexSet closure, VertexSet neighbors,
+      VertexSet scope, SieveVisitor visitor) {
+    long cl = chunk(closure, level);
+    long nb = chunk(neighbors, level);
+    boolean last = level == levels - 1;
+    int end = blockStart[x] + blockSize[x];
+    for (int i = blockStart[x]; i < end; i++) {
+      long label = labels[i];
+      if ((label & ~cl) != 0) {
+        continue;
+      }
+      int nn = nNeighb + Long.bitCount(nb & ~label);
+      if (nn > width) {
+        continue;
+      }
+      if (last) {
+        if (inScope(child[i], scope) &&
+            !visitor.visit(components[child[i]])) {
+          return false;
+        }
+      }
+      else if (!get(child[i], level + 1, nn, closure, neighbors, scope, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The counterpart of {@code get} for a graph with at most 
+   * {@code MAX_WORDS_N} vertices, with the closure, the neighbors and
+   * the scope given by their two words
+   */
+  boolean get(long c0, long c1, long nb0, long nb1, long s0, long s1,
+      SieveVisitor visitor) {
+    assert n <= MAX_WORDS_N;
+    for (int nn = 1; nn <= width; nn++) {
+      if (root[nn] >= 0 &&
+          !get(root[nn], 0, nn, c0, c1, nb0, nb1, s0, s1, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean get(int x, int level, int nNeighb, long c0, long c1, 
+      long nb0, long nb1, long s0, long s1, SieveVisitor visitor) {
+    long cl = chunk(c0, c1, level);
+    long nb = chunk(nb0, nb1, level);
+    boolean last = level == levels - 1;
+    int end = blockStart[x] + blockSize[x];
+    for (int i = blockStart[x]; i < end; i++) {
+      long label = labels[i];
+      if ((label & ~cl) != 0) {
+        continue;
+      }
+      int nn = nNeighb + Long.bitCount(nb & ~label);
+      if (nn > width) {
+        continue;
+      }
+      if (last) {
+        if (inScope(child[i], s0, s1) &&
+            !visitor.visit(components[child[i]])) {
+          return false;
+        }
+      }
+      else if (!get(child[i], level + 1, nn, c0, c1, nb0, nb1, s0, s1, 
+          visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean inScope(int c, long s0, long s1) {
+    int base = c * nWords;
+    return (componentWords[base] & ~s0) == 0 &&
+        (nWords == 1 || (componentWords[base + 1] & ~s1) == 0);
+  }
+
+  boolean inScope(int c, VertexSet scope) {
+    int base = c * nWords;
+    for (int j = 0; j < nWords; j++) {
+      if ((componentWords[base + j] & ~scope.word(j)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of bytes taken by the arrays of this trie,
+   * not counting the components themselves
+   * @return the number of bytes
+   */
+  long footprint() {
+    return 8L * labels.length + 4L * child.length +
+        12L * blockStart.length + 8L * components.length +
+        8L * componentWords.length +
+        4L * root.length;
+  }
+
+  void dump() {
+    for (int nn = 1; nn <= width; nn++) {
+      if (root[nn] < 0) {
+        System.out.println("width " + nn + " sieve empty");
+      }
+      else {
+        System.out.println("width " + nn + ":" );
+        dump(root[nn], 0, "");
+      }
+    }
+  }
+
+  void dump(int x, int level, String indent) {
+    int end = blockStart[x] + blockSize[x];
+    for (int i = blockStart[x]; i < end; i++) {
+      System.out.print(indent + level + " " + Long.toHexString(labels[i]));
+      if (level == levels - 1) {
+        System.out.println(" " + components[child[i]]);
+      }
+      else {
+        System.out.println();
+        dump(child[i], level + 1, indent + " ");
+      }
+    }
+  }
+}
@@ -127,7 +127,7 @@ public class LargeSubsetSieve {
     if (root == null) {
       return result;
     }
-    root.get(sup.toByteArray(), maxMissing, result);
+    get(sup, maxMissing, result::add);
 
     if (VERIFY) {
       Set<XBitSet> rSet = new HashSet<>();
@@ -160,6 +160,24 @@ public class LargeSubsetSieve {
     return result;
   }
   
+  /**
+   * Streams the sets that would be listed by {@code get(sup, maxMissing)}
+   * to the visitor, in the same order, until the visitor asks to stop.
+   * The sieve must not be added to until this method returns.
+   * @param sup the set the sets retrieved are subsets of
+   * @param maxMissing the maximum number of vertices of {@code sup} 
+   * missing from a set retrieved
+   * @param visitor the visitor to receive the sets
+   * @return {@code false} if the visitor stopped the query;
+   * {@code true} otherwise
+   */
+  public boolean get(XBitSet sup, int maxMissing, SieveVisitor visitor) {
+    if (root == null) {
+      return true;
+    }
+    return root.get(sup.toByteArray(), maxMissing, visitor);
+  }
+
   void dump() {
     System.out.println("sieve for n = " + n);
     if (root == null) {
@@ -393,10 +411,9 @@ public class LargeSubsetSieve {
       children = Arrays.copyOf(newChildren, k);
     }
     
-    void get(byte[] supBytes, int maxMissing, ArrayList<XBitSet> result) {
+    boolean get(byte[] supBytes, int maxMissing, SieveVisitor visitor) {
       if (type == NodeType.LEAF) {
-        result.add(set);
-        return;
+        return visitor.visit(set);
       }
       
       if (type == NodeType.BYTE) {
@@ -409,10 +426,13 @@ public class LargeSubsetSieve {
           if (((bytes[i] & ~sup) & 0xff) == 0) {
             int missing = sup & ~bytes[i];
             int nMiss = Integer.bitCount(missing);
-            if (nMiss <= maxMissing)
-            children[i].get(supBytes, maxMissing - nMiss, result);
+            if (nMiss <= maxMissing &&
+                !children[i].get(supBytes, maxMissing - nMiss, visitor)) {
+              return false;
+            }
           }
         }
+        return true;
       }
       
       int length = typeLength[type.ordinal()];
@@ -434,8 +454,10 @@ public class LargeSubsetSieve {
           if (((shorts[i] & ~sup) & 0xffff) == 0) {
             int missing = sup & ~shorts[i];
             int nMiss = Integer.bitCount(missing);
-            if (nMiss <= maxMissing)
-            children[i].get(supBytes, maxMissing - nMiss, result);
+            if (nMiss <= maxMissing &&
+                !children[i].get(supBytes, maxMissing - nMiss, visitor)) {
+              return false;
+            }
           }
         }
         break;
@@ -448,8 +470,10 @@ public class LargeSubsetSieve {
           if ((ints[i] & ~sup) == 0) {
             int missing = sup & ~ints[i];
             int nMiss = Integer.bitCount(missing);
-            if (nMiss <= maxMissing)
-            children[i].get(supBytes, maxMissing - nMiss, result);
+            if (nMiss <= maxMissing &&
+                !children[i].get(supBytes, maxMissing - nMiss, visitor)) {
+              return false;
+            }
           }
         }
         break;
@@ -460,13 +484,16 @@ public class LargeSubsetSieve {
           if ((longs[i] & ~lsup) == 0) {
             long missing = lsup & ~longs[i];
             int nMiss = Long.bitCount(missing);
-            if (nMiss <= maxMissing)
-            children[i].get(supBytes, maxMissing - nMiss, result);
+            if (nMiss <= maxMissing &&
+                !children[i].get(supBytes, maxMissing - nMiss, visitor)) {
+              return false;
+            }
           }
         }
         break;
       }
       }
+      return true;
     }
     void dump(String indent) {
       System.out.print(indent + d + " " + type);
@@ -0,0 +1,19 @@
+package io.github.twalgor.sieve;
+
+import io.github.twalgor.common.XBitSet;
+
+/**
+ * A consumer of the sets retrieved from a sieve, one at a time,
+ * in the order in which the list returning queries would list them.
+ * The sieve must not be modified while its query is in progress;
+ * queries to the same or other sieves may be nested.
+ */
+public interface SieveVisitor {
+  /**
+   * Receives a set retrieved
+   * @param set the set retrieved
+   * @return {@code true} to continue the query;
+   * {@code false} to stop it
+   */
+  boolean visit(XBitSet set);
+}
@@ -15,6 +15,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import io.github.twalgor.common.Graph;
+import io.github.twalgor.common.VertexSet;
 import io.github.twalgor.common.XBitSet;
 
 
@@ -31,6 +32,12 @@ public class SubblockSieve {
   static final String sieveSequencePath = "sieveSequence2";
 
   private static final int NODE_SIZE = 20000;
+
+  /**
+   * {@code true} to store the trie in the flat arrays of 
+   * {@code FlatSieveTrie}; {@code false} for the tree of {@code Node}s
+   */
+  public static boolean FLAT = true;
 //  private static boolean VERIFY = true;
   private static boolean VERIFY = false;
 //  private static boolean DEBUG = true;
@@ -48,6 +55,8 @@ public class SubblockSieve {
   int width;
   
   Node[] root;
+  FlatSieveTrie flat;
+  ConcurrentSieveTrie concurrent;
 
   HashMap<XBitSet, XBitSet> sieved;
   ArrayList<XBitSet> sieveSequence;
@@ -56,6 +65,20 @@ public class SubblockSieve {
   int minElement;
    
   public SubblockSieve (Graph g, int width) {
+    this(g, width, false);
+  }
+
+  /**
+   * Creates a sieve, which is safe for concurrent use if so specified:
+   * then any number of threads may add to and query the sieve at the same
+   * time, without external synchronization.  A concurrent sieve is
+   * stored in the copy-on-write trie of {@code ConcurrentSieveTrie},
+   * regardless of {@code FLAT}.
+   * @param g the graph
+   * @param width the bound on the union of the separators
+   * @param concurrent {@code true} for a sieve safe for concurrent use
+   */
+  public SubblockSieve (Graph g, int width, boolean concurrent) {
 //    System.out.println("n = " + n);
     this.g = g;
     this.n = g.n;
@@ -73,7 +96,15 @@ public class SubblockSieve {
         e.printStackTrace();
       }
     }
-    root = new Node[width + 1];
+    if (concurrent) {
+      this.concurrent = new ConcurrentSieveTrie(n, width);
+    }
+    else if (FLAT) {
+      flat = new FlatSieveTrie(n, width);
+    }
+    else {
+      root = new Node[width + 1];
+    }
     if (DEBUG) {
       System.out.println("Subblock sieve created for n = " + n + ", width = " + width);
     }
@@ -84,8 +115,26 @@ public class SubblockSieve {
       sieved.put(component, neighbors);
       sieveSequence.add(component);
     }
-    XBitSet closure = component.unionWith(neighbors);
     int nn = neighbors.cardinality();
+    if (concurrent != null) {
+      VertexSet closure = new VertexSet(n, component);
+      closure.or(new VertexSet(n, neighbors));
+      concurrent.add(closure, nn, component);
+      return;
+    }
+    if (flat != null) {
+      if (n <= FlatSieveTrie.MAX_WORDS_N) {
+        flat.add(VertexSet.word(component, 0) | VertexSet.word(neighbors, 0),
+            VertexSet.word(component, 1) | VertexSet.word(neighbors, 1),
+            nn, component);
+        return;
+      }
+      VertexSet closure = new VertexSet(n, component);
+      closure.or(new VertexSet(n, neighbors));
+      flat.add(closure, nn, component);
+      return;
+    }
+    XBitSet closure = component.unionWith(neighbors);
     if (root[nn] != null) {
        root[nn].add(closure.toByteArray(), component);
     }
@@ -157,66 +206,139 @@ public class SubblockSieve {
   }
   
   public ArrayList<XBitSet> get(XBitSet scope, XBitSet neighbors) {
+    return get(new VertexSet(n, scope), new VertexSet(n, neighbors));
+  }
+
+  public ArrayList<XBitSet> get(VertexSet scope, VertexSet neighbors) {
     ArrayList<XBitSet> result = new ArrayList<>();
+    get(scope, neighbors, result::add);
+    if (VERIFY) {
+      verify(scope.toXBitSet(), neighbors.toXBitSet(), result);
+    }
+    return result;
+  }
+
+  public boolean get(XBitSet scope, XBitSet neighbors, SieveVisitor visitor) {
+    if (flat != null && n <= FlatSieveTrie.MAX_WORDS_N) {
+      long s0 = VertexSet.word(scope, 0);
+      long s1 = VertexSet.word(scope, 1);
+      long nb0 = VertexSet.word(neighbors, 0);
+      long nb1 = VertexSet.word(neighbors, 1);
+      return flat.get(s0 | nb0, s1 | nb1, nb0, nb1, s0, s1, visitor);
+    }
+    return get(new VertexSet(n, scope), new VertexSet(n, neighbors), visitor);
+  }
+
+  /**
+   * Streams the components that would be listed by
+   * {@code get(scope, neighbors)} to the visitor, in the same order,
+   * until the visitor asks to stop.
+   * The query is encoded once for all the width classes.
+   * Unless the sieve is concurrent, it must not be added to
+   * until this method returns.
+   * @param scope the set the components retrieved are subsets of
+   * @param neighbors the separator whose union with the separator of
+   * a component retrieved has at most {@code width} vertices
+   * @param visitor the visitor to receive the components
+   * @return {@code false} if the visitor stopped the query;
+   * {@code true} otherwise
+   */
+  public boolean get(VertexSet scope, VertexSet neighbors, SieveVisitor visitor) {
+    if (flat != null && n <= FlatSieveTrie.MAX_WORDS_N) {
+      // the sets fit in two words: no closure to allocate
+      long s0 = scope.word(0);
+      long s1 = n > 64 ? scope.word(1) : 0;
+      long nb0 = neighbors.word(0);
+      long nb1 = n > 64 ? neighbors.word(1) : 0;
+      return flat.get(s0 | nb0, s1 | nb1, nb0, nb1, s0, s1, visitor);
+    }
+    VertexSet closure = scope.unionWith(neighbors, new VertexSet(n));
+    if (concurrent != null) {
+      return concurrent.get(closure, neighbors, scope, visitor);
+    }
+    if (flat != null) {
+      return flat.get(closure, neighbors, scope, visitor);
+    }
+    byte[] closureBytes = new byte[depth];
+    closure.toBytes(closureBytes);
+    byte[] neighbBytes = new byte[depth];
+    neighbors.toBytes(neighbBytes);
     for (int nn = 1; nn <= width; nn++) {
-      if (root[nn] != null) {
-        root[nn].get(scope.unionWith(neighbors).toByteArray(), 
-          neighbors.toByteArray(), nn, scope, 
-          result);
+      if (root[nn] != null &&
+          !root[nn].get(closureBytes, neighbBytes, nn, scope, visitor)) {
+        return false;
       }
     }
-    if (VERIFY) {
-      Set<XBitSet> rSet = new HashSet<>();
-      rSet.addAll(result);
-      Set<XBitSet> correct = new HashSet<>();
-      for (XBitSet component: sieved.keySet()) {
-        if (component.isSubset(scope) &&
-            neighbors.unionWith(sieved.get(component)).cardinality() <= width) {
-          correct.add(component);
-        }
+    return true;
+  }
+
+  void verify(XBitSet scope, XBitSet neighbors, ArrayList<XBitSet> result) {
+    Set<XBitSet> rSet = new HashSet<>();
+    rSet.addAll(result);
+    Set<XBitSet> correct = new HashSet<>();
+    for (XBitSet component: sieved.keySet()) {
+      if (component.isSubset(scope) &&
+          neighbors.unionWith(sieved.get(component)).cardinality() <= width) {
+        correct.add(component);
       }
-      boolean isCorrect = true;
-      for (XBitSet component: correct) {
-        if (!rSet.contains(component)) {
-          isCorrect = false;
-          XBitSet sep = g.neighborSet(component);
-          System.out.println("missing " + component + ", sep = " + sep);
-          System.out.println(" for get(" + scope + ", " + neighbors + ")");
-          System.out.println(" union sep = " + sep.unionWith(scope));
-          if (saveSieveSeq) {
-            System.out.println("sieve sequece is written to file:" + sieveSequencePath);
-            try {
-              ssStream = new PrintStream(new FileOutputStream(sieveSequencePath));
-            } catch (FileNotFoundException e) {
-              e.printStackTrace();
-            }
-            ssStream.println(sieveSequence.size());
-            for (XBitSet c: sieveSequence) {
-              ssStream.println(c);
-            }
-            ssStream.close();
+    }
+    boolean isCorrect = true;
+    for (XBitSet component: correct) {
+      if (!rSet.contains(component)) {
+        isCorrect = false;
+        XBitSet sep = g.neighborSet(component);
+        System.out.println("missing " + component + ", sep = " + sep);
+        System.out.println(" for get(" + scope + ", " + neighbors + ")");
+        System.out.println(" union sep = " + sep.unionWith(scope));
+        if (saveSieveSeq) {
+          System.out.println("sieve sequece is written to file:" + sieveSequencePath);
+          try {
+            ssStream = new PrintStream(new FileOutputStream(sieveSequencePath));
+          } catch (FileNotFoundException e) {
+            e.printStackTrace();
+          }
+          ssStream.println(sieveSequence.size());
+          for (XBitSet c: sieveSequence) {
+            ssStream.println(c);
           }
+          ssStream.close();
+        }
 //          assert false;
 
-        }
       }
-      for (XBitSet component: rSet) {
-        if (!correct.contains(component)) {
-          isCorrect = false;
-          System.out.println("extra " + component + 
-              "(" + g.neighborSet(component) + ")" + 
-              ", for get(" + scope + ", " + neighbors + ")");
-        }
+    }
+    for (XBitSet component: rSet) {
+      if (!correct.contains(component)) {
+        isCorrect = false;
+        System.out.println("extra " + component + 
+            "(" + g.neighborSet(component) + ")" + 
+            ", for get(" + scope + ", " + neighbors + ")");
       }
-      if (!isCorrect) {
+    }
+    if (!isCorrect) {
 //        dump();
-      }
     }
-    return result;
   }
   
+  /**
+   * Returns the number of bytes taken by the flat trie, 
+   * not counting the components themselves; -1 if the trie is not flat
+   * @return the number of bytes
+   */
+  public long footprint() {
+    return flat != null ? flat.footprint() : -1;
+  }
+
   void dump() {
     System.out.println("sieve for n = " + n + ", width = " + width);
+    if (concurrent != null) {
+      concurrent.dump();
+      return;
+    }
+    if (flat != null) {
+      flat.dump();
+      return;
+    }
     for (int nn = 1; nn <= width; nn++) {
       if (root[nn] == null) {
         System.out.println("width " + nn + " sieve empty");
@@ -451,13 +573,13 @@ public class SubblockSieve {
       children = Arrays.copyOf(newChildren, k);
     }
     
-    void get(byte[] closureBytes, byte[] neighbBytes, int nNeighb, 
-        XBitSet scope, ArrayList<XBitSet> result) {
+    boolean get(byte[] closureBytes, byte[] neighbBytes, int nNeighb, 
+        VertexSet scope, SieveVisitor visitor) {
       if (type == NodeType.LEAF) {
-        if (component.isSubset(scope)) {
-          result.add(component);
+        if (scope.isSuperset(component)) {
+          return visitor.visit(component);
         }
-        return;
+        return true;
       }
       
       if (type == NodeType.BYTE) {
@@ -475,13 +597,14 @@ public class SubblockSieve {
           if (((bytes[i] & ~cl) & 0xff) == 0) {
             int extraNeighbs = (nb & ~bytes[i]) & 0xff;
             int nExtra = Integer.bitCount(extraNeighbs);
-            if (nNeighb + nExtra <= width) {
-              children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
-                  scope, result);
+            if (nNeighb + nExtra <= width &&
+                !children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
+                    scope, visitor)) {
+              return false;
             }
           }
         }
-        return;
+        return true;
       }
       
       int length = typeLength[type.ordinal()];
@@ -509,9 +632,10 @@ public class SubblockSieve {
           if (((shorts[i] & ~cl) & 0xffff) == 0) {
             int extraNeighbs = (nb & ~shorts[i]) & 0xffff;
             int nExtra = Integer.bitCount(extraNeighbs);
-            if (nNeighb + nExtra <= width) {
-              children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
-                  scope, result);
+            if (nNeighb + nExtra <= width &&
+                !children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
+                    scope, visitor)) {
+              return false;
             }
           }
         }
@@ -526,9 +650,10 @@ public class SubblockSieve {
           if ((ints[i] & ~cl) == 0) {
             int extraNeighbs = (nb & ~ints[i]) & 0xffffffff;
             int nExtra = Integer.bitCount(extraNeighbs);
-            if (nNeighb + nExtra <= width) {
-              children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
-                  scope, result);
+            if (nNeighb + nExtra <= width &&
+                !children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
+                    scope, visitor)) {
+              return false;
             }
           }
         }
@@ -540,15 +665,17 @@ public class SubblockSieve {
           if ((longs[i] & ~label) == 0) {
             long extraNeighbs = neighb & ~longs[i];
             int nExtra = Long.bitCount(extraNeighbs);
-            if (nNeighb + nExtra <= width) {
-              children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
-                  scope, result);
+            if (nNeighb + nExtra <= width &&
+                !children[i].get(closureBytes, neighbBytes, nNeighb + nExtra, 
+                    scope, visitor)) {
+              return false;
             }
           }
         }
         break;
       }
       }
+      return true;
     }
     void dump(String indent) {
       System.out.print(indent + d + " " + type);